@@ -0,0 +1,198 @@
+import java.util.Iterator;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * Sorted set on the Red-Black Binary Tree where every node keeps the summary of its subtree given by an
+ * Aggregator. The summaries are kept up to date through rotations, insertions and deletions by an
+ * augmentation of the tree, so the summary of any range of elements is found in O(log n) by combining the
+ * summaries of the O(log n) subtrees covering the range.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class AggregatedTreeSet<T extends Comparable<? super T>, A> implements Iterable<T> {
+
+    private final Aggregator<? super T, A> aggregator;
+    private final RedBlackBinaryTree<T> tree;
+
+
+    public AggregatedTreeSet(Aggregator<? super T, A> aggregator) {
+        this.aggregator = aggregator;
+        this.tree = new RedBlackBinaryTree<>(this::updateSummary);
+    }
+
+
+    public boolean add(T t) {
+        return tree.add(t);
+    }
+
+
+    public boolean remove(T t) {
+        return tree.remove(t);
+    }
+
+
+    public boolean contains(T t) {
+        return tree.contains(t);
+    }
+
+
+    public int size() {
+        return tree.size();
+    }
+
+
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+
+    public void clear() {
+        tree.clear();
+    }
+
+
+    public T first() {
+        return tree.isEmpty() ? null : tree.first();
+    }
+
+
+    public T last() {
+        return tree.isEmpty() ? null : tree.last();
+    }
+
+
+    public Iterator<T> iterator() {
+        return tree.iterator();
+    }
+
+
+    /**
+     * Returns an iterator starting at the least element greater than or equal to from, or at the first element
+     * if from is null
+     */
+
+    Iterator<T> iteratorFrom(T from) {
+        return from == null ? tree.iterator() : tree.iteratorFrom(from, false);
+    }
+
+
+    /**
+     * Removes every element greater than or equal to from and less than to, see RedBlackBinaryTree.removeRange
+     */
+
+    public int removeRange(T from, T to) {
+        return tree.removeRange(from, to);
+    }
+
+
+    /**
+     * Returns the summary of every element
+     */
+
+    public A aggregate() {
+        return tree.isEmpty() ? aggregator.identity() : summary(tree.root());
+    }
+
+
+    /**
+     * Returns the summary of the elements greater than or equal to from and less than to. The search descends
+     * to the first node inside the range, where the paths to the two ends of the range part, and then follows
+     * each path adding the summaries of the subtrees that lie completely inside the range.
+     *
+     * @param from the least element of the range, or null for a range without lower bound
+     * @param to   the element above the range, or null for a range without upper bound
+     */
+
+    public A aggregate(T from, T to) {
+        RedBlackBinaryTree.Node<T> node = tree.isEmpty() ? null : tree.root();
+
+        while (node != null && !tree.isNil(node)) {
+            if (from != null && node.data.compareTo(from) < 0)
+                node = node.right;
+            else if (to != null && node.data.compareTo(to) >= 0)
+                node = node.left;
+            else {
+                A lower = aggregateFrom(node.left, from);
+                A upper = aggregateBelow(node.right, to);
+                return aggregator.combine(aggregator.combine(lower, aggregator.of(node.data)), upper);
+            }
+        }
+        return aggregator.identity();
+    }
+
+    /**
+     * Returns the element at the index in ascending order in O(log n), for summaries that know the number of
+     * elements they summarize
+     *
+     * @param index the number of elements before the one returned
+     * @param size  gives the number of elements of a summary
+     * @throws IndexOutOfBoundsException if there is no element at the index
+     */
+
+    T select(int index, ToIntFunction<? super A> size) {
+        if (index < 0 || index >= tree.size())
+            throw new IndexOutOfBoundsException("Index " + index + " of " + tree.size() + " elements");
+
+        RedBlackBinaryTree.Node<T> node = tree.root();
+        while (true) {
+            int left = size.applyAsInt(summary(node.left));
+            if (index < left)
+                node = node.left;
+            else if (index == left)
+                return node.data;
+            else {
+                index -= left + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the summary of the elements in the subtree greater than or equal to from
+     */
+
+    private A aggregateFrom(RedBlackBinaryTree.Node<T> node, T from) {
+        A result = aggregator.identity();
+        while (!tree.isNil(node)) {
+            if (from == null || node.data.compareTo(from) >= 0) {
+                // the node and its right subtree are in the range and before everything found so far
+                A nodeAndRight = aggregator.combine(aggregator.of(node.data), summary(node.right));
+                result = aggregator.combine(nodeAndRight, result);
+                node = node.left;
+            } else
+                node = node.right;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the summary of the elements in the subtree less than to
+     */
+
+    private A aggregateBelow(RedBlackBinaryTree.Node<T> node, T to) {
+        A result = aggregator.identity();
+        while (!tree.isNil(node)) {
+            if (to == null || node.data.compareTo(to) < 0) {
+                // the left subtree and the node are in the range and after everything found so far
+                A leftAndNode = aggregator.combine(summary(node.left), aggregator.of(node.data));
+                result = aggregator.combine(result, leftAndNode);
+                node = node.right;
+            } else
+                node = node.left;
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private A summary(RedBlackBinaryTree.Node<T> node) {
+        return tree.isNil(node) ? aggregator.identity() : (A) node.summary;
+    }
+
+    private void updateSummary(RedBlackBinaryTree.Node<T> node) {
+        A leftAndNode = aggregator.combine(summary(node.left), aggregator.of(node.data));
+        node.summary = aggregator.combine(leftAndNode, summary(node.right));
+    }
+}
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class AggregatedTreeSetTest {
+
+    private final AggregatedTreeSet<Integer, Long> sums =
+            new AggregatedTreeSet<>(Aggregator.of(0L, Long::valueOf, Long::sum));
+
+
+    @BeforeEach
+    void setUp() {
+        for (int n = 1; n <= 10; n++)
+            assertTrue(sums.add(n));
+    }
+
+    @Test
+    void testAggregate() {
+        assertEquals(55L, sums.aggregate());
+        assertEquals(3L + 4 + 5 + 6, sums.aggregate(3, 7));
+        assertEquals(1L + 2, sums.aggregate(null, 3));
+        assertEquals(9L + 10, sums.aggregate(9, null));
+        assertEquals(0L, sums.aggregate(11, 20));
+        assertEquals(0L, sums.aggregate(5, 5));
+    }
+
+    @Test
+    void testAggregateAfterRemove() {
+        assertTrue(sums.remove(5));
+        assertEquals(3L + 4 + 6, sums.aggregate(3, 7));
+        assertEquals(4, sums.removeRange(1, 6));
+        assertEquals(6L + 7 + 8 + 9 + 10, sums.aggregate());
+    }
+
+    @Test
+    void testAggregateKeepsOrder() {
+        AggregatedTreeSet<String, String> concatenation =
+                new AggregatedTreeSet<>(Aggregator.of("", s -> s, String::concat));
+        for (String s : "f b d a c e g".split(" "))
+            concatenation.add(s);
+
+        assertEquals("abcdefg", concatenation.aggregate());
+        assertEquals("bcde", concatenation.aggregate("b", "f"));
+    }
+
+    @Test
+    void testRandomAggregate() {
+        Random rnd = new Random();
+        AggregatedTreeSet<Integer, Integer> maxima =
+                new AggregatedTreeSet<>(Aggregator.of(Integer.MIN_VALUE, x -> x % 97, Math::max));
+        TreeSet<Integer> oracle = new TreeSet<>();
+
+        for (int n = 0; n < 3000; n++) {
+            int data = rnd.nextInt(2000);
+            if (rnd.nextInt(3) > 0)
+                assertEquals(oracle.add(data), maxima.add(data));
+            else
+                assertEquals(oracle.remove(data), maxima.remove(data));
+
+            int from = rnd.nextInt(2000);
+            int to = from + rnd.nextInt(300);
+            int expected = Integer.MIN_VALUE;
+            for (int m : oracle.subSet(from, to))
+                expected = Math.max(expected, m % 97);
+            assertEquals(expected, maxima.aggregate(from, to));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+
+/**
+ * Summary of a range of elements, like their sum or their maximum, that can be computed by combining the
+ * summaries of smaller ranges. The combination must be associative and the identity must be a neutral element
+ * of it, but the combination does not need to be commutative since ranges are always combined in order.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public interface Aggregator<T, A> {
+
+
+    /**
+     * Returns the summary of an empty range
+     */
+
+    A identity();
+
+    /**
+     * Returns the summary of a range holding only the element
+     */
+
+    A of(T data);
+
+    /**
+     * Returns the summary of two adjacent ranges, where the left range holds the smaller elements
+     */
+
+    A combine(A left, A right);
+
+
+    /**
+     * Creates an aggregator from its parts, for example Aggregator.of(0L, Long::valueOf, Long::sum) for the sum
+     * of integers
+     */
+
+    static <T, A> Aggregator<T, A> of(A identity, Function<? super T, ? extends A> of, BinaryOperator<A> combine) {
+        return new Aggregator<>() {
+
+            @Override
+            public A identity() {
+                return identity;
+            }
+
+            @Override
+            public A of(T data) {
+                return of.apply(data);
+            }
+
+            @Override
+            public A combine(A left, A right) {
+                return combine.apply(left, right);
+            }
+        };
+    }
+}
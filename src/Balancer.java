@@ -0,0 +1,56 @@
+/**
+ * The fix-ups a Red-Black Binary Tree calls after it changes its shape, implemented by every BalancingPolicy.
+ * The tree only links and cuts nodes and leaves keeping its height bound to the balancer.
+ *
+ * @author August Johnson Palm
+ */
+
+
+interface Balancer {
+
+    /**
+     * Restores the rules after a node was linked into the tree as a leaf
+     *
+     * @param tree the tree the node was inserted into
+     * @param node the newly inserted node
+     */
+
+    <T extends Comparable<? super T>> void inserted(RedBlackBinaryTree<T> tree, RedBlackBinaryTree.Node<T> node);
+
+    /**
+     * Called before a leaf is cut off the tree, while the leaf still is in place
+     *
+     * @param tree the tree the leaf is removed from
+     * @param leaf the leaf about to be cut off
+     */
+
+    <T extends Comparable<? super T>> void removing(RedBlackBinaryTree<T> tree, RedBlackBinaryTree.Node<T> leaf);
+
+    /**
+     * Restores the rules after a leaf was cut off the tree
+     *
+     * @param tree the tree the leaf was removed from
+     * @param parent the parent of the removed leaf
+     */
+
+    <T extends Comparable<? super T>> void removed(RedBlackBinaryTree<T> tree, RedBlackBinaryTree.Node<T> parent);
+
+    /**
+     * Called when a search found a node, by contains, add or remove
+     *
+     * @param tree the tree searched
+     * @param node the node found
+     */
+
+    default <T extends Comparable<? super T>> void accessed(RedBlackBinaryTree<T> tree,
+                                                            RedBlackBinaryTree.Node<T> node) {
+    }
+
+    /**
+     * Returns true if the balancer keeps the red-black colors, so the tree may split and join by black heights
+     */
+
+    default boolean keepsColors() {
+        return false;
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * The rules a Red-Black Binary Tree keeps its height within. Every policy is a Balancer with its own fix-ups
+ * restoring the rules after an insertion or a deletion, the tree itself does not know which policy it has.
+ * Every policy but SPLAY keeps the height in O(log n), they differ in how tight the bound is and in how much
+ * restructuring an update costs.
+ * <p>
+ * AVL and WAVL trees keep a rank in every node instead of a color, where a leaf has rank 0 and a nil node
+ * rank -1, and bound the rank difference between a node and its children. Both insert the same way, only
+ * deletion tells them apart.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public enum BalancingPolicy implements Balancer {
+
+    /**
+     * The red-black rules, at most 2 log n high. An insertion rotates at most twice and a deletion at most
+     * three times, and the recoloring is O(1) amortized.
+     */
+    RED_BLACK {
+        public <T extends Comparable<? super T>> void inserted(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> node) {
+            tree.balanceInsertion1(node);
+        }
+
+        public <T extends Comparable<? super T>> void removing(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> leaf) {
+            tree.balanceDeletion1(leaf);
+        }
+
+        public <T extends Comparable<? super T>> void removed(RedBlackBinaryTree<T> tree,
+                                                              RedBlackBinaryTree.Node<T> parent) {
+        }
+
+        public boolean keepsColors() {
+            return true;
+        }
+    },
+
+    /**
+     * The AVL rule, the heights of the children of every node differ by at most one, so the tree is at most
+     * 1.44 log n high and lookups go through fewer nodes. The rank of a node is its height. A deletion may
+     * rotate at every level on the way to the root.
+     */
+    AVL {
+        public <T extends Comparable<? super T>> void inserted(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> node) {
+            rankBalanceInsertion(tree, node);
+        }
+
+        public <T extends Comparable<? super T>> void removing(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> leaf) {
+        }
+
+        public <T extends Comparable<? super T>> void removed(RedBlackBinaryTree<T> tree,
+                                                              RedBlackBinaryTree.Node<T> parent) {
+            avlBalanceDeletion(tree, parent);
+        }
+    },
+
+    /**
+     * The weak AVL rules, the rank difference of every child is 1 or 2 and every leaf has rank 0. Without
+     * deletions the tree is an AVL tree, and deletions only loosen the bound towards 2 log n. A deletion
+     * rotates at most twice, like in a red-black tree, and the rank changes are O(1) amortized.
+     */
+    WAVL {
+        public <T extends Comparable<? super T>> void inserted(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> node) {
+            rankBalanceInsertion(tree, node);
+        }
+
+        public <T extends Comparable<? super T>> void removing(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> leaf) {
+        }
+
+        public <T extends Comparable<? super T>> void removed(RedBlackBinaryTree<T> tree,
+                                                              RedBlackBinaryTree.Node<T> parent) {
+            wavlBalanceDeletion(tree, parent);
+        }
+    },
+
+    /**
+     * No rules on the height, instead every node found by contains, add or remove is splayed to the root, so
+     * elements accessed often stay near the top. Operations cost O(log n) amortized, and a skewed access
+     * pattern costs less, about the entropy of the access distribution, but a single operation may take O(n).
+     * Since lookups rotate nodes the tree must not be read by several threads at once. The rotations of an
+     * access can be bounded with RedBlackBinaryTree.setSplayLimit.
+     */
+    SPLAY {
+        public <T extends Comparable<? super T>> void inserted(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> node) {
+            splay(tree, node);
+        }
+
+        public <T extends Comparable<? super T>> void removing(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> leaf) {
+        }
+
+        public <T extends Comparable<? super T>> void removed(RedBlackBinaryTree<T> tree,
+                                                              RedBlackBinaryTree.Node<T> parent) {
+        }
+
+        public <T extends Comparable<? super T>> void accessed(RedBlackBinaryTree<T> tree,
+                                                               RedBlackBinaryTree.Node<T> node) {
+            splay(tree, node);
+        }
+    };
+
+
+    /**
+     * Restores the rank rules of the AVL and WAVL policies after an insertion, which are the same rules
+     * without deletions. The inserted leaf has rank 0 and may have the rank of its parent. While a node has
+     * the rank of its parent and the sibling of the node has a rank difference of 1, the parent is promoted
+     * and the problem moves up. Otherwise the sibling has a rank difference of 2 and one or two rotations
+     * end the fix-up.
+     *
+     * @param node the newly inserted node
+     */
+
+    private static <T extends Comparable<? super T>> void rankBalanceInsertion(RedBlackBinaryTree<T> tree,
+                                                                               RedBlackBinaryTree.Node<T> node) {
+        while (!node.isRoot() && node.parent.rank == node.rank) {
+            RedBlackBinaryTree.Node<T> parent = node.parent;
+
+            if (parent.rank - node.sibling().rank == 1) {
+                parent.rank++; // promote the parent
+                node = parent;
+                continue;
+            }
+
+            // the child of the node facing its sibling decides between a single and a double rotation
+            RedBlackBinaryTree.Node<T> inner = node.isLeftChild() ? node.right : node.left;
+            if (node.rank - inner.rank == 2) {
+                if (node.isLeftChild())
+                    tree.rightRotate(parent);
+                else
+                    tree.leftRotate(parent);
+                parent.rank--;
+
+            } else {
+                if (node.isLeftChild()) {
+                    tree.leftRotate(node);
+                    tree.rightRotate(parent);
+                } else {
+                    tree.rightRotate(node);
+                    tree.leftRotate(parent);
+                }
+                inner.rank++;
+                node.rank--;
+                parent.rank--;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Restores the AVL rule after a deletion by walking up from the parent of the removed leaf. A node whose
+     * children differ by two in height is rotated towards its lower child, with a double rotation if the
+     * higher child leans the other way. The walk ends at the first node whose subtree kept its height.
+     *
+     * @param node the parent of the removed leaf
+     */
+
+    private static <T extends Comparable<? super T>> void avlBalanceDeletion(RedBlackBinaryTree<T> tree,
+                                                                             RedBlackBinaryTree.Node<T> node) {
+        while (node != null) {
+            int height = node.rank;
+            int balance = node.left.rank - node.right.rank;
+
+            RedBlackBinaryTree.Node<T> top = node;
+            if (balance > 1) {
+                RedBlackBinaryTree.Node<T> child = node.left;
+                if (child.right.rank > child.left.rank) {
+                    tree.leftRotate(child);
+                    child.updateHeight();
+                }
+                tree.rightRotate(node);
+                top = node.parent;
+
+            } else if (balance < -1) {
+                RedBlackBinaryTree.Node<T> child = node.right;
+                if (child.left.rank > child.right.rank) {
+                    tree.rightRotate(child);
+                    child.updateHeight();
+                }
+                tree.leftRotate(node);
+                top = node.parent;
+            }
+
+            node.updateHeight();
+            top.updateHeight();
+            if (top.rank == height)
+                return;
+
+            node = top.parent;
+        }
+    }
+
+    /**
+     * Restores the WAVL rules after a deletion. A parent left as a leaf of rank 1 is demoted. Then, while a
+     * node has a rank difference of 3, its parent is demoted if the sibling has a rank difference of 2, and
+     * both the parent and the sibling are demoted if both children of the sibling have a rank difference of 2.
+     * Otherwise one or two rotations end the fix-up, which is what keeps the rotations per deletion at two.
+     *
+     * @param parent the parent of the removed leaf
+     */
+
+    private static <T extends Comparable<? super T>> void wavlBalanceDeletion(RedBlackBinaryTree<T> tree,
+                                                                              RedBlackBinaryTree.Node<T> parent) {
+        // the nil node left in place of the removed leaf
+        RedBlackBinaryTree.Node<T> node = tree.isNil(parent.left) ? parent.left : parent.right;
+
+        if (tree.isNil(parent.left) && tree.isNil(parent.right)) {
+            parent.rank = 0;
+            node = parent;
+            parent = parent.parent;
+        }
+
+        while (parent != null && parent.rank - node.rank == 3) {
+            RedBlackBinaryTree.Node<T> sibling = node == parent.left ? parent.right : parent.left;
+
+            if (parent.rank - sibling.rank == 2)
+                parent.rank--;
+
+            else if (sibling.rank - sibling.left.rank == 2 && sibling.rank - sibling.right.rank == 2) {
+                parent.rank--;
+                sibling.rank--;
+
+            } else {
+                rotateAfterWavlDeletion(tree, parent, sibling);
+                return;
+            }
+
+            node = parent;
+            parent = parent.parent;
+        }
+    }
+
+    /**
+     * Handles the last case of a WAVL deletion, where the node under the parent has a rank difference of 3,
+     * its sibling a rank difference of 1 and a child with a rank difference of 1. If it is the child farthest
+     * from the node the sibling is rotated up, otherwise the other child is rotated up twice.
+     */
+
+    private static <T extends Comparable<? super T>> void rotateAfterWavlDeletion(RedBlackBinaryTree<T> tree,
+                                                                                  RedBlackBinaryTree.Node<T> parent,
+                                                                                  RedBlackBinaryTree.Node<T> sibling) {
+        boolean siblingIsRight = sibling == parent.right;
+        RedBlackBinaryTree.Node<T> far = siblingIsRight ? sibling.right : sibling.left;
+        RedBlackBinaryTree.Node<T> near = siblingIsRight ? sibling.left : sibling.right;
+
+        if (sibling.rank - far.rank == 1) {
+            if (siblingIsRight)
+                tree.leftRotate(parent);
+            else
+                tree.rightRotate(parent);
+
+            sibling.rank++;
+            parent.rank--;
+            if (tree.isNil(parent.left) && tree.isNil(parent.right))
+                parent.rank--; // a leaf has rank 0
+
+        } else {
+            if (siblingIsRight) {
+                tree.rightRotate(sibling);
+                tree.leftRotate(parent);
+            } else {
+                tree.leftRotate(sibling);
+                tree.rightRotate(parent);
+            }
+            near.rank += 2;
+            sibling.rank--;
+            parent.rank -= 2;
+        }
+    }
+
+    /**
+     * Moves an accessed node towards the root of a splay tree. A node whose parent and grandparent lie in the
+     * same direction is rotated up after its parent (zig-zig), otherwise it is rotated up twice (zig-zag),
+     * which halves the depth of the nodes on the access path. A node under the root, or one rotation short of
+     * the limit, is rotated up once (zig).
+     *
+     * @param node the node accessed
+     */
+
+    private static <T extends Comparable<? super T>> void splay(RedBlackBinaryTree<T> tree,
+                                                                RedBlackBinaryTree.Node<T> node) {
+        int rotations = tree.splayLimit();
+        while (!node.isRoot() && rotations > 0) {
+            RedBlackBinaryTree.Node<T> parent = node.parent;
+
+            if (parent.isRoot() || rotations == 1) {
+                rotateUp(tree, node);
+                rotations--;
+            } else {
+                if (node.isLeftChild() == parent.isLeftChild())
+                    rotateUp(tree, parent);
+                else
+                    rotateUp(tree, node);
+                rotateUp(tree, node);
+                rotations -= 2;
+            }
+        }
+    }
+
+    /**
+     * Rotates the node up in place of its parent
+     */
+
+    private static <T extends Comparable<? super T>> void rotateUp(RedBlackBinaryTree<T> tree,
+                                                                   RedBlackBinaryTree.Node<T> node) {
+        if (node.isLeftChild())
+            tree.rightRotate(node.parent);
+        else
+            tree.leftRotate(node.parent);
+    }
+}
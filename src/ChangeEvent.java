@@ -0,0 +1,41 @@
+/**
+ * Change made to a MyTreeSet, delivered to a ChangeListener
+ *
+ * @author August Johnson Palm
+ */
+
+
+public final class ChangeEvent<T> {
+
+    public enum Kind {
+        ADDED, REMOVED, CLEARED
+    }
+
+
+    private final Kind kind;
+    private final T key;
+
+
+    ChangeEvent(Kind kind, T key) {
+        this.kind = kind;
+        this.key = key;
+    }
+
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Returns the element added or removed, or null for CLEARED
+     */
+
+    public T key() {
+        return key;
+    }
+
+
+    public String toString() {
+        return kind == Kind.CLEARED ? "Cleared" : (kind == Kind.ADDED ? "Added(" : "Removed(") + key + ")";
+    }
+}
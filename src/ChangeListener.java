@@ -0,0 +1,21 @@
+import java.util.List;
+
+
+/**
+ * Receives the changes made to a MyTreeSet in batches, see MyTreeSet.subscribe
+ *
+ * @author August Johnson Palm
+ */
+
+
+@FunctionalInterface
+public interface ChangeListener<T> {
+
+
+    /**
+     * Called on the delivery thread of the stream with the next changes in the order they were made. The list
+     * is only valid during the call.
+     */
+
+    void onChanges(List<ChangeEvent<T>> changes);
+}
@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Stream of the changes made to a MyTreeSet, delivered in batches to a ChangeListener on a thread of its own.
+ * The writer only puts an event in a bounded queue, and the delivery thread takes every event queued so far,
+ * up to the batch size, for each call to the listener. If the listener falls so far behind that the queue is
+ * full the writer waits for room, so no change is ever dropped.
+ * <p>
+ * If the listener throws, the stream stops delivering and drops the changes after it, and flush and close
+ * throw IllegalStateException with the exception as cause.
+ * <p>
+ * The listener may close its own stream. The delivery thread then drops the changes still queued and ends
+ * after the current batch, without waiting for the set to change. The stream leaves the set at the next change
+ * made to it, since only the writer may change the streams of the set.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class ChangeStream<T extends Comparable<? super T>> implements AutoCloseable {
+
+    private static final ChangeEvent<?> END = new ChangeEvent<>(ChangeEvent.Kind.CLEARED, null);
+
+    private final MyTreeSet<T> set;
+    private final ChangeListener<T> listener;
+    private final BlockingQueue<ChangeEvent<T>> queue;
+    private final int batchSize;
+    private final Thread delivery;
+
+    private final Object lock = new Object();
+    private volatile long published; // written by the writer only
+    private long delivered; // guarded by lock
+    private RuntimeException failure; // guarded by lock
+    private volatile boolean failed; // set with failure, read by the writer without taking the lock
+    private volatile boolean closed;
+    private volatile boolean closedByListener; // closed on the delivery thread, the writer unsubscribes it
+
+
+    ChangeStream(MyTreeSet<T> set, ChangeListener<T> listener, int batchSize, int capacity) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+
+        this.set = set;
+        this.listener = listener;
+        this.batchSize = batchSize;
+        queue = new ArrayBlockingQueue<>(capacity);
+
+        delivery = new Thread(this::deliver, "ChangeStream delivery");
+        delivery.setDaemon(true);
+        delivery.start();
+    }
+
+
+    /**
+     * Waits until every change made before the call has been delivered
+     *
+     * @throws IllegalStateException if the listener has thrown
+     */
+
+    public void flush() throws InterruptedException {
+        long target = published;
+        synchronized (lock) {
+            while (delivered < target && failure == null && !closedByListener)
+                lock.wait();
+
+            if (failure != null)
+                throw new IllegalStateException("Change listener failed", failure);
+        }
+    }
+
+
+    /**
+     * Stops the stream from receiving changes, delivers the changes already made and stops the delivery thread.
+     * If the thread is interrupted while waiting for the delivery the wait goes on and the interrupt is kept
+     * for the caller to see. Called by the listener the stream stops after the current batch instead.
+     *
+     * @throws IllegalStateException if the listener has thrown
+     */
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+
+        closed = true;
+        if (Thread.currentThread() == delivery) {
+            closedByListener = true; // joining the delivery thread would wait for itself
+            return;
+        }
+
+        set.unsubscribe(this);
+        enqueue(end());
+        joinDelivery();
+
+        synchronized (lock) {
+            if (failure != null)
+                throw new IllegalStateException("Change listener failed", failure);
+        }
+    }
+
+
+    /**
+     * Queues a change, waiting for room if the queue is full. Called by the set.
+     */
+
+    void publish(ChangeEvent.Kind kind, T key) {
+        if (closedByListener) {
+            set.unsubscribe(this); // the delivery thread has ended, so nothing is queued any more
+            return;
+        }
+        if (failed)
+            return;
+
+        published++;
+        enqueue(new ChangeEvent<>(kind, key));
+    }
+
+    /**
+     * Puts the event in the queue even if the thread is interrupted while waiting, the interrupt is kept for
+     * the caller to see
+     */
+
+    private void enqueue(ChangeEvent<T> event) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(event);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void joinDelivery() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                delivery.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void deliver() {
+        List<ChangeEvent<T>> batch = new ArrayList<>(batchSize);
+        boolean ended = false;
+
+        while (!ended) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return; // the stream never interrupts the thread, so someone else wants it to stop
+            }
+            queue.drainTo(batch, batchSize - 1);
+
+            // nothing is queued after the end, so it can only be last
+            if (batch.get(batch.size() - 1) == END) {
+                batch.remove(batch.size() - 1);
+                ended = true;
+            }
+
+            try {
+                if (!batch.isEmpty())
+                    listener.onChanges(batch);
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    failure = e;
+                    failed = true;
+                    lock.notifyAll();
+                }
+                if (!ended)
+                    drainUntilEnd();
+                return;
+            }
+
+            synchronized (lock) {
+                delivered += batch.size();
+                lock.notifyAll();
+            }
+            batch.clear();
+
+            if (closedByListener) {
+                // a writer that has not seen the close yet puts at most one more event, which the emptied
+                // queue has room for
+                queue.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes and drops events after a failure until the end is queued by close, which also lets a writer
+     * waiting for room go on
+     */
+
+    private void drainUntilEnd() {
+        try {
+            while (queue.take() != END) ;
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    //only for JUNIT-tests
+    Thread deliveryThread() {
+        return delivery;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ChangeEvent<T> end() {
+        return (ChangeEvent<T>) END;
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+
+/**
+ * Counting Bloom filter answering whether an element may be in a set, used by MyTreeSet to answer most
+ * lookups of missing elements without searching the tree. Every element is hashed to a number of counters
+ * which are incremented when it is added and decremented when it is removed. An element whose counters are
+ * not all above zero is certainly not in the set, otherwise it may be.
+ * <p>
+ * A counter that reaches 255 stays there, since its true count is lost. Such counters and removals the filter
+ * is not told about only make the filter answer "may be" more often, never wrongly "no". The elements must
+ * have a hashCode consistent with compareTo.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class CountingBloomFilter<T> {
+
+    private static final int SATURATED = 0xFF;
+
+    private final byte[] counters; // unsigned
+    private final int hashes;
+    private final int capacity;
+
+    private long lookups;
+    private long rejected;
+    private long falsePositives;
+
+
+    /**
+     * Creates a filter sized for the number of elements at the given false positive rate
+     *
+     * @param capacity          the number of elements the filter is sized for
+     * @param falsePositiveRate the wanted rate of missing elements that may be in the set at that capacity
+     */
+
+    public CountingBloomFilter(int capacity, double falsePositiveRate) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+
+        double ln2 = Math.log(2);
+        long size = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        counters = new byte[(int) Math.min(Math.max(size, 64), Integer.MAX_VALUE - 8)];
+        hashes = Math.max(1, (int) Math.round((double) counters.length / capacity * ln2));
+        this.capacity = capacity;
+    }
+
+
+    /**
+     * Returns false if the element is certainly not in the set
+     */
+
+    public boolean mightContain(T t) {
+        lookups++;
+
+        long hash = mix(t.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            if (counters[index(h1 + i * h2)] == 0) {
+                rejected++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void add(T t) {
+        long hash = mix(t.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int index = index(h1 + i * h2);
+            if ((counters[index] & 0xFF) != SATURATED)
+                counters[index]++;
+        }
+    }
+
+    void remove(T t) {
+        long hash = mix(t.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int index = index(h1 + i * h2);
+            int count = counters[index] & 0xFF;
+            if (count != SATURATED && count != 0)
+                counters[index]--;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(counters, (byte) 0);
+    }
+
+    /**
+     * Records that an element the filter said may be in the set was not
+     */
+
+    void falsePositive() {
+        falsePositives++;
+    }
+
+
+    /**
+     * Returns the number of elements the filter was sized for
+     */
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of lookups made through the filter
+     */
+
+    public long lookups() {
+        return lookups;
+    }
+
+    /**
+     * Returns the number of lookups the filter answered without a search
+     */
+
+    public long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of lookups the filter let through for elements that were not in the set
+     */
+
+    public long falsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * Returns the share of lookups of missing elements that the filter let through
+     */
+
+    public double falsePositiveRate() {
+        long missing = rejected + falsePositives;
+        return missing == 0 ? 0 : (double) falsePositives / missing;
+    }
+
+    public void resetMetrics() {
+        lookups = 0;
+        rejected = 0;
+        falsePositives = 0;
+    }
+
+
+    public String toString() {
+        return "lookups " + lookups + ", rejected " + rejected + ", false positives " + falsePositives;
+    }
+
+
+    private int index(int hash) {
+        return (int) ((hash & 0xFFFFFFFFL) % counters.length);
+    }
+
+    /**
+     * Spreads the bits of a hash code over 64 bits, the finalizer of MurmurHash3
+     */
+
+    private static long mix(int hashCode) {
+        long h = hashCode * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93F53A5FE1AL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
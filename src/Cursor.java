@@ -0,0 +1,152 @@
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+
+/**
+ * Reusable position in a MyTreeSet that can move both ways. Seeking costs O(log n) and moving to the next or
+ * previous element O(1) along the nextLargest and nextSmallest links. A cursor allocates nothing after it has
+ * been created, so one cursor can serve any number of scans by seeking again.
+ * <p>
+ * A cursor is positioned on an element or, after moving past either end or reset, on no element. If the set
+ * is modified other than through the cursor, the cursor throws ConcurrentModificationException until it
+ * seeks again.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class Cursor<T extends Comparable<? super T>> {
+
+    private final RedBlackBinaryTree<T> tree;
+    private final Consumer<T> removed; // told about every element removed through the cursor
+
+    private RedBlackBinaryTree.Node<T> current; // null when the cursor is not on an element
+    private int expectedModCount;
+
+
+    Cursor(RedBlackBinaryTree<T> tree, Consumer<T> removed) {
+        this.tree = tree;
+        this.removed = removed;
+        expectedModCount = tree.modCount();
+    }
+
+
+    /**
+     * Moves to the least element greater than or equal to the data
+     *
+     * @return true if there is such an element
+     */
+
+    public boolean seek(T data) {
+        return moveTo(tree.ceilingNode(data));
+    }
+
+    /**
+     * Moves to the greatest element less than or equal to the data
+     *
+     * @return true if there is such an element
+     */
+
+    public boolean seekFloor(T data) {
+        return moveTo(tree.floorNode(data));
+    }
+
+    public boolean seekFirst() {
+        return moveTo(tree.firstNode());
+    }
+
+    public boolean seekLast() {
+        return moveTo(tree.lastNode());
+    }
+
+    /**
+     * Moves to the next larger element
+     *
+     * @return true if the cursor still is on an element
+     */
+
+    public boolean next() {
+        checkForComodification();
+        if (current == null)
+            throw new NoSuchElementException();
+
+        current = tree.nextNode(current);
+        return current != null;
+    }
+
+    /**
+     * Moves to the next smaller element
+     *
+     * @return true if the cursor still is on an element
+     */
+
+    public boolean prev() {
+        checkForComodification();
+        if (current == null)
+            throw new NoSuchElementException();
+
+        current = tree.previousNode(current);
+        return current != null;
+    }
+
+    public boolean isValid() {
+        return current != null && expectedModCount == tree.modCount();
+    }
+
+    /**
+     * Returns the element the cursor is on
+     */
+
+    public T get() {
+        checkForComodification();
+        if (current == null)
+            throw new NoSuchElementException();
+
+        return current.data;
+    }
+
+    /**
+     * Removes the element the cursor is on and moves to the next larger element
+     *
+     * @return true if the cursor still is on an element
+     */
+
+    public boolean remove() {
+        checkForComodification();
+        if (current == null)
+            throw new IllegalStateException();
+
+        T data = current.data;
+        RedBlackBinaryTree.Node<T> next = tree.nextNode(current);
+        T nextData = next == null ? null : next.data;
+
+        tree.delete(current);
+        removed.accept(data);
+
+        // a deletion may shift data between nodes, so the next node is looked up again by its data
+        current = nextData == null ? null : tree.getNode(nextData);
+        expectedModCount = tree.modCount();
+        return current != null;
+    }
+
+    /**
+     * Moves the cursor off the elements so that it can be kept for a later seek
+     */
+
+    public void reset() {
+        current = null;
+        expectedModCount = tree.modCount();
+    }
+
+    private boolean moveTo(RedBlackBinaryTree.Node<T> node) {
+        current = node;
+        expectedModCount = tree.modCount();
+        return current != null;
+    }
+
+    private void checkForComodification() {
+        if (expectedModCount != tree.modCount())
+            throw new ConcurrentModificationException();
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.Random;
+
+
+/**
+ * Compares searches from the root with finger search on nearly sorted streams, where every key is within a
+ * small distance of the key before it. Run with java FingerSearchBenchmark [elements] [max step].
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class FingerSearchBenchmark {
+
+    private static final int ROUNDS = 5; // the first rounds warm up the JIT and are not reported
+
+
+    public static void main(String[] args) {
+        int elements = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxStep = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        int[] stream = nearlySortedStream(elements, maxStep, new Random(42));
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long fromRoot = run(stream, false);
+            long withFinger = run(stream, true);
+
+            if (round > ROUNDS / 2)
+                System.out.printf("round %d: root %6.1f ns/op, finger %6.1f ns/op%n", round,
+                        (double) fromRoot / stream.length, (double) withFinger / stream.length);
+        }
+    }
+
+    /**
+     * Adds every key of the stream, then looks every key and its neighbours up again in the same order, four
+     * operations for every key of the stream
+     *
+     * @return the elapsed time in nanoseconds divided by four, which divided by the length of the stream is
+     * the time per operation
+     */
+
+    private static long run(int[] stream, boolean fingerSearch) {
+        RedBlackBinaryTree<Integer> tree = new RedBlackBinaryTree<>();
+        tree.setFingerSearch(fingerSearch);
+
+        long start = System.nanoTime();
+        for (int key : stream)
+            tree.add(key);
+
+        int found = 0;
+        for (int key : stream) {
+            if (tree.contains(key))
+                found++;
+            if (tree.lower(key) != null)
+                found++;
+            if (tree.higher(key) != null)
+                found++;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (found == 0)
+            throw new AssertionError(); // keeps the lookups from being optimized away
+
+        return elapsed / 4;
+    }
+
+    /**
+     * Creates a stream of keys that mostly grows, where every key is up to maxStep / 2 below or 3 / 2 maxStep
+     * above the key before it, so the keys grow by maxStep / 2 on average
+     */
+
+    private static int[] nearlySortedStream(int elements, int maxStep, Random rnd) {
+        int[] stream = new int[elements];
+        int key = 0;
+        for (int n = 0; n < elements; n++) {
+            key += rnd.nextInt(2 * maxStep + 1) - maxStep / 2;
+            stream[n] = key;
+        }
+        return stream;
+    }
+}
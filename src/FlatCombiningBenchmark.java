@@ -0,0 +1,162 @@
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+
+/**
+ * Compares the throughput of write heavy workloads on a tree behind one lock, a flat combining tree and a
+ * ConcurrentSkipListSet at 1 to 64 threads. Every thread adds and removes random keys from a fixed range and
+ * looks some up. Run with java FlatCombiningBenchmark [operations per thread] [key range].
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class FlatCombiningBenchmark {
+
+    private static final int ROUNDS = 3; // the first rounds warm up the JIT and are not reported
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+
+    /**
+     * The operations of a set under test
+     */
+    private interface Target {
+
+        boolean add(int key);
+
+        boolean remove(int key);
+
+        boolean contains(int key);
+    }
+
+
+    public static void main(String[] args) throws InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int keyRange = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (int threads : THREADS) {
+                double locked = run(FlatCombiningBenchmark::lockedTree, threads, operations, keyRange);
+                double combining = run(FlatCombiningBenchmark::combiningTree, threads, operations, keyRange);
+                double skipList = run(FlatCombiningBenchmark::skipList, threads, operations, keyRange);
+
+                if (round > ROUNDS / 2)
+                    System.out.printf("round %d, %2d threads: lock %6.2f, flat combining %6.2f, skip list %6.2f"
+                            + " ops/us%n", round, threads, locked, combining, skipList);
+            }
+        }
+    }
+
+    /**
+     * Runs the workload on a new target with the given number of threads
+     *
+     * @return the throughput in operations per microsecond
+     */
+
+    private static double run(Supplier<Target> factory, int threads, int operations, int keyRange)
+            throws InterruptedException {
+        Target target = factory.get();
+        for (int key = 0; key < keyRange; key += 2)
+            target.add(key);
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Random rnd = new Random(t);
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int n = 0; n < operations; n++) {
+                    int key = rnd.nextInt(keyRange);
+                    switch (rnd.nextInt(5)) {
+                        case 0, 1 -> target.add(key);
+                        case 2, 3 -> target.remove(key);
+                        default -> target.contains(key);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        long elapsed = System.nanoTime() - begin;
+
+        return (double) threads * operations * 1000 / elapsed;
+    }
+
+    private static Target lockedTree() {
+        MyTreeSet<Integer> set = new MyTreeSet<>();
+        ReentrantLock lock = new ReentrantLock();
+        return new Target() {
+            public boolean add(int key) {
+                lock.lock();
+                try {
+                    return set.add(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            public boolean remove(int key) {
+                lock.lock();
+                try {
+                    return set.remove(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            public boolean contains(int key) {
+                lock.lock();
+                try {
+                    return set.contains(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
+    private static Target combiningTree() {
+        FlatCombiningTreeSet<Integer> set = new FlatCombiningTreeSet<>();
+        return new Target() {
+            public boolean add(int key) {
+                return set.add(key);
+            }
+
+            public boolean remove(int key) {
+                return set.remove(key);
+            }
+
+            public boolean contains(int key) {
+                return set.contains(key);
+            }
+        };
+    }
+
+    private static Target skipList() {
+        ConcurrentSkipListSet<Integer> set = new ConcurrentSkipListSet<>();
+        return new Target() {
+            public boolean add(int key) {
+                return set.add(key);
+            }
+
+            public boolean remove(int key) {
+                return set.remove(key);
+            }
+
+            public boolean contains(int key) {
+                return set.contains(key);
+            }
+        };
+    }
+}
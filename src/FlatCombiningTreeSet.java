@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Thread safe sorted set on one Red-Black Binary Tree using flat combining. A thread publishes its operation
+ * in a slot of its own and then tries to become the combiner by taking the lock. The combiner collects the
+ * operations of every slot, sorts them by element and applies them to the tree in one batch while the other
+ * threads wait on their slots, so the lock changes hands once per batch instead of once per operation.
+ * <p>
+ * The tree searches with a finger, so every operation of a sorted batch starts from the node the operation
+ * before it ended on and neighbouring elements are reached in a few steps.
+ * <p>
+ * An operation that throws, like an add of an element whose compareTo throws, fails on its own: the exception
+ * is handed to the thread that made the operation and the other operations of the batch are applied as usual.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class FlatCombiningTreeSet<T extends Comparable<? super T>> {
+
+
+    /**
+     * Inner class representing the slot of a thread. The operation and element are written by the owner and
+     * read by the combiner, the result and error the other way around, both ordered by the volatile pending
+     * flag.
+     */
+    private static class Slot<T> {
+
+        final Thread owner = Thread.currentThread();
+
+        int operation;
+        T data;
+        boolean result;
+        Throwable error; // thrown by the operation, rethrown by the owner
+        volatile boolean pending;
+
+        Slot<T> next; // the slot registered before this one, only changed by a combiner unlinking dead slots
+    }
+
+
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int CONTAINS = 2;
+
+    private static final int COMBINE_PASSES = 4; // passes over the slots per combining, to catch late arrivals
+    private static final int YIELD_INTERVAL = 64; // spins between yielding while waiting for a combiner
+
+    private final RedBlackBinaryTree<T> tree = new RedBlackBinaryTree<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ThreadLocal<Slot<T>> slot = ThreadLocal.withInitial(this::register);
+    private final AtomicReference<Slot<T>> slots = new AtomicReference<>(); // the last registered slot
+
+    // used by the combiner only
+    private final List<Slot<T>> batch = new ArrayList<>();
+    private final List<Slot<T>> sorted = new ArrayList<>();
+    private final Comparator<Slot<T>> byData = (a, b) -> a.data.compareTo(b.data);
+
+
+    public FlatCombiningTreeSet() {
+        tree.setFingerSearch(true);
+    }
+
+
+    public boolean add(T t) {
+        return apply(ADD, t);
+    }
+
+
+    public boolean remove(T t) {
+        return apply(REMOVE, t);
+    }
+
+
+    public boolean contains(T t) {
+        return apply(CONTAINS, t);
+    }
+
+
+    public int size() {
+        lock.lock();
+        try {
+            return tree.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+
+    public void clear() {
+        lock.lock();
+        try {
+            tree.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the elements in ascending order as they were at one point in time
+     */
+
+    public List<T> toList() {
+        lock.lock();
+        try {
+            List<T> elements = new ArrayList<>(tree.size());
+            tree.iterator().forEachRemaining(elements::add);
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    public String toString() {
+        return toList().toString();
+    }
+
+
+    /**
+     * Publishes the operation and waits until it has been applied, either by this thread as the combiner or by
+     * another thread combining
+     */
+
+    private boolean apply(int operation, T data) {
+        if (data == null)
+            throw new NullPointerException();
+
+        Slot<T> own = slot.get();
+        own.operation = operation;
+        own.data = data;
+        own.pending = true;
+
+        for (int spins = 1; own.pending; spins++) {
+            if (lock.tryLock()) {
+                try {
+                    combine();
+                } finally {
+                    lock.unlock();
+                }
+            } else if (spins % YIELD_INTERVAL == 0)
+                Thread.yield(); // lets a descheduled combiner run when there are more threads than processors
+            else
+                Thread.onSpinWait();
+        }
+
+        own.data = null;
+        Throwable error = own.error;
+        if (error != null) {
+            own.error = null;
+            if (error instanceof Error)
+                throw (Error) error;
+            throw (RuntimeException) error; // the tree throws no checked exceptions
+        }
+        return own.result;
+    }
+
+    /**
+     * Applies the pending operations of every slot in sorted batches. Must be called holding the lock.
+     */
+
+    private void combine() {
+        unlinkDeadSlots();
+
+        for (int pass = 0; pass < COMBINE_PASSES; pass++) {
+            try {
+                for (Slot<T> s = slots.get(); s != null; s = s.next)
+                    if (s.pending)
+                        batch.add(s);
+
+                if (batch.isEmpty())
+                    return;
+
+                for (Slot<T> s : sort(batch))
+                    apply(s);
+            } finally {
+                batch.clear();
+                sorted.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the slots sorted by element, or in the order they were collected if an element can not be
+     * compared. The batch itself is never sorted, since a sort that throws may leave it with slots missing.
+     */
+
+    private List<Slot<T>> sort(List<Slot<T>> batch) {
+        sorted.addAll(batch);
+        try {
+            sorted.sort(byData);
+            return sorted;
+        } catch (RuntimeException e) {
+            return batch; // every operation still runs, the failing ones throw on their own below
+        }
+    }
+
+    /**
+     * Applies the operation of one slot and hands it back to its owner, with the exception if it threw
+     */
+
+    private void apply(Slot<T> s) {
+        try {
+            s.result = switch (s.operation) {
+                case ADD -> tree.add(s.data);
+                case REMOVE -> tree.remove(s.data);
+                default -> tree.contains(s.data);
+            };
+        } catch (Throwable e) {
+            s.error = e;
+        } finally {
+            s.pending = false;
+        }
+    }
+
+    /**
+     * Unlinks the slots of threads that have ended, which have nothing pending, so that the passes only scan
+     * the threads that may still use the set. The last registered slot is left in place, since registering
+     * threads replace it with compareAndSet. Must be called holding the lock.
+     */
+
+    private void unlinkDeadSlots() {
+        Slot<T> previous = slots.get();
+        if (previous == null)
+            return;
+
+        for (Slot<T> s = previous.next; s != null; s = s.next) {
+            if (s.owner.isAlive())
+                previous = s;
+            else
+                previous.next = s.next;
+        }
+    }
+
+    //only for JUNIT-tests, the number of slots the combiner scans
+    int registeredSlots() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Slot<T> s = slots.get(); s != null; s = s.next)
+                count++;
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates the slot of the calling thread and publishes it to combiners. The slot is unlinked by a combiner
+     * once the thread has ended, see unlinkDeadSlots.
+     */
+
+    private Slot<T> register() {
+        Slot<T> s = new Slot<>();
+        Slot<T> last;
+        do {
+            last = slots.get();
+            s.next = last;
+        } while (!slots.compareAndSet(last, s));
+
+        return s;
+    }
+}
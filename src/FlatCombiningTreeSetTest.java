@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class FlatCombiningTreeSetTest {
+
+    private final FlatCombiningTreeSet<Integer> set = new FlatCombiningTreeSet<>();
+
+
+    @Test
+    void testSingleThread() {
+        assertTrue(set.add(2));
+        assertTrue(set.add(1));
+        assertFalse(set.add(2));
+        assertTrue(set.contains(1));
+        assertTrue(set.remove(1));
+        assertFalse(set.remove(1));
+        assertFalse(set.contains(1));
+        assertEquals(1, set.size());
+        assertEquals("[2]", set.toString());
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertThrows(NullPointerException.class, () -> set.add(null));
+    }
+
+    @Test
+    void testConcurrentWriters() throws InterruptedException {
+        Thread[] writers = new Thread[8];
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t;
+            writers[t] = new Thread(() -> {
+                // every thread adds its own residue class and removes the odd multiples of it again
+                for (int n = offset; n < 40000; n += writers.length)
+                    set.add(n);
+                for (int n = offset + writers.length; n < 40000; n += 2 * writers.length)
+                    set.remove(n);
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        SortedSet<Integer> expected = new TreeSet<>();
+        for (int n = 0; n < 40000; n++)
+            if (n / writers.length % 2 == 0)
+                expected.add(n);
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), set.toList());
+    }
+
+    @Test
+    void testConcurrentAddsOfSameElements() throws InterruptedException {
+        AtomicInteger added = new AtomicInteger();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int n = 0; n < 10000; n++)
+                    if (set.add(n))
+                        added.incrementAndGet(); // only one thread may succeed for every element
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        assertEquals(10000, added.get());
+        assertEquals(10000, set.size());
+    }
+
+    /**
+     * Element whose compareTo throws when either side is poisoned
+     */
+    static class Poisonable implements Comparable<Poisonable> {
+
+        final int value;
+        final boolean poisoned;
+
+        Poisonable(int value, boolean poisoned) {
+            this.value = value;
+            this.poisoned = poisoned;
+        }
+
+        public int compareTo(Poisonable other) {
+            if (poisoned || other.poisoned)
+                throw new IllegalStateException("poisoned");
+            return Integer.compare(value, other.value);
+        }
+    }
+
+    @Test
+    void testThrowingCompareToFailsOnlyItsOwnOperation() throws InterruptedException {
+        FlatCombiningTreeSet<Poisonable> set = new FlatCombiningTreeSet<>();
+        assertTrue(set.add(new Poisonable(-1, false)));
+        assertThrows(IllegalStateException.class, () -> set.add(new Poisonable(0, true)));
+
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int n = offset; n < 4000; n += threads.length) {
+                    try {
+                        if (set.add(new Poisonable(n, n % 10 == 0)))
+                            added.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        // every poisoned add failed on its own thread and every other add was applied exactly once
+        assertEquals(400, failed.get());
+        assertEquals(3600, added.get());
+        assertEquals(3601, set.size());
+    }
+
+    @Test
+    void testSlotsOfEndedThreadsAreUnlinked() throws InterruptedException {
+        for (int n = 0; n < 100; n++) {
+            int data = n;
+            Thread thread = new Thread(() -> set.add(data));
+            thread.start();
+            thread.join();
+        }
+        assertTrue(set.add(100)); // combines, unlinking the slots of the ended threads
+        assertEquals(101, set.size());
+        assertTrue(set.registeredSlots() <= 2);
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Immutable sorted set made by MyTreeSet.freeze for data that is built once and then only queried. There are
+ * no nodes, only two arrays of the elements and one int array:
+ * <ul>
+ * <li>sorted holds the elements in ascending order, for iteration and neighbours by position</li>
+ * <li>layout holds the elements in Eytzinger order, the breadth first order of a complete binary search tree
+ * where the children of index k are at 2k and 2k + 1, starting from index 1</li>
+ * <li>position holds the index in sorted of every element in layout</li>
+ * </ul>
+ * A search in the Eytzinger layout steps from k to 2k or 2k + 1 by adding the outcome of the comparison, so
+ * the loop has no branch depending on the data. The first levels are shared by every search and stay in the
+ * cache, and the children of a node are next to each other, so each level costs at most one cache miss.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class FrozenTreeSet<T extends Comparable<? super T>> implements Iterable<T> {
+
+    private final T[] sorted;
+    private final T[] layout;
+    private final int[] position;
+
+    private int filled; // number of sorted elements placed in the layout while it is built
+
+
+    /**
+     * Creates a set of the elements, which must be sorted in ascending order without duplicates
+     */
+
+    @SuppressWarnings("unchecked")
+    FrozenTreeSet(Comparable<?>[] sorted) {
+        this.sorted = (T[]) sorted;
+        layout = (T[]) new Comparable<?>[sorted.length + 1];
+        position = new int[sorted.length + 1];
+        fill(1);
+    }
+
+    /**
+     * Places the sorted elements in the layout by an in-order walk of the implicit tree, which visits the
+     * indices in the order of the elements
+     */
+
+    private void fill(int k) {
+        if (k > sorted.length)
+            return;
+
+        fill(2 * k);
+        layout[k] = sorted[filled];
+        position[k] = filled++;
+        fill(2 * k + 1);
+    }
+
+
+    public int size() {
+        return sorted.length;
+    }
+
+
+    public boolean isEmpty() {
+        return sorted.length == 0;
+    }
+
+
+    public boolean contains(T t) {
+        int k = ceilingIndex(t);
+        return k != 0 && t.compareTo(layout[k]) == 0;
+    }
+
+
+    public T first() {
+        return isEmpty() ? null : sorted[0];
+    }
+
+
+    public T last() {
+        return isEmpty() ? null : sorted[sorted.length - 1];
+    }
+
+
+    public T lower(T t) {
+        return before(ceilingIndex(t));
+    }
+
+
+    public T floor(T t) {
+        return before(higherIndex(t));
+    }
+
+
+    public T ceiling(T t) {
+        return layout[ceilingIndex(t)]; // index 0 is always null
+    }
+
+
+    public T higher(T t) {
+        return layout[higherIndex(t)];
+    }
+
+
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < sorted.length;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return sorted[next++];
+            }
+        };
+    }
+
+
+    public Iterator<T> descendingIterator() {
+        return new Iterator<T>() {
+
+            private int next = sorted.length - 1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return sorted[next--];
+            }
+        };
+    }
+
+
+    public Object[] toArray() {
+        return Arrays.copyOf(sorted, sorted.length, Object[].class);
+    }
+
+
+    public String toString() {
+        return Arrays.toString(sorted);
+    }
+
+
+    /**
+     * Returns the layout index of the least element greater than or equal to the data, or 0 if there is none.
+     * The search goes right past every element less than the data down to below a leaf, and the index then
+     * holds the path taken as bits. The last left turn was taken at the ceiling, so the right turns after it,
+     * the trailing ones, and the left turn itself are shifted out.
+     */
+
+    private int ceilingIndex(T data) {
+        if (data == null)
+            throw new NullPointerException();
+
+        int k = 1;
+        while (k < layout.length)
+            k = 2 * k + (layout[k].compareTo(data) < 0 ? 1 : 0);
+
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    /**
+     * Returns the layout index of the least element greater than the data, or 0 if there is none
+     */
+
+    private int higherIndex(T data) {
+        if (data == null)
+            throw new NullPointerException();
+
+        int k = 1;
+        while (k < layout.length)
+            k = 2 * k + (layout[k].compareTo(data) <= 0 ? 1 : 0);
+
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    /**
+     * Returns the element before the one at the layout index, or the last element if the index is 0
+     */
+
+    private T before(int k) {
+        int i = k == 0 ? sorted.length : position[k];
+        return i > 0 ? sorted[i - 1] : null;
+    }
+}
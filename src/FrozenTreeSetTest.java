@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class FrozenTreeSetTest {
+
+    @Test
+    void testEmpty() {
+        FrozenTreeSet<Integer> frozen = new MyTreeSet<Integer>().freeze();
+        assertTrue(frozen.isEmpty());
+        assertFalse(frozen.contains(1));
+        assertNull(frozen.lower(1));
+        assertNull(frozen.floor(1));
+        assertNull(frozen.ceiling(1));
+        assertNull(frozen.higher(1));
+        assertNull(frozen.first());
+        assertFalse(frozen.iterator().hasNext());
+    }
+
+    @Test
+    void testSearches() {
+        MyTreeSet<Integer> set = new MyTreeSet<>();
+        for (int n = 10; n <= 50; n += 10)
+            set.add(n);
+        FrozenTreeSet<Integer> frozen = set.freeze();
+
+        assertEquals(5, frozen.size());
+        assertTrue(frozen.contains(30));
+        assertFalse(frozen.contains(35));
+        assertEquals(30, frozen.lower(35));
+        assertEquals(20, frozen.lower(30));
+        assertEquals(30, frozen.floor(30));
+        assertEquals(40, frozen.ceiling(35));
+        assertEquals(40, frozen.higher(30));
+        assertNull(frozen.lower(10));
+        assertNull(frozen.higher(50));
+        assertEquals(10, frozen.first());
+        assertEquals(50, frozen.last());
+        assertEquals("[10, 20, 30, 40, 50]", frozen.toString());
+    }
+
+    @Test
+    void testRandomAgainstTreeSet() {
+        Random rnd = new Random();
+
+        for (int n = 0; n < 200; n++) {
+            MyTreeSet<Integer> set = new MyTreeSet<>();
+            TreeSet<Integer> oracle = new TreeSet<>();
+            int size = rnd.nextInt(300);
+            for (int i = 0; i < size; i++) {
+                int element = rnd.nextInt(1000);
+                set.add(element);
+                oracle.add(element);
+            }
+            FrozenTreeSet<Integer> frozen = set.freeze();
+
+            for (int i = 0; i < 100; i++) {
+                int probe = rnd.nextInt(1100) - 50;
+                assertEquals(oracle.contains(probe), frozen.contains(probe));
+                assertEquals(oracle.lower(probe), frozen.lower(probe));
+                assertEquals(oracle.floor(probe), frozen.floor(probe));
+                assertEquals(oracle.ceiling(probe), frozen.ceiling(probe));
+                assertEquals(oracle.higher(probe), frozen.higher(probe));
+            }
+
+            List<Integer> descending = new ArrayList<>();
+            frozen.descendingIterator().forEachRemaining(descending::add);
+            assertEquals(new ArrayList<>(oracle.descendingSet()), descending);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.Objects;
+
+
+/**
+ * Closed interval [start, end], ordered by start and then by end
+ *
+ * @author August Johnson Palm
+ */
+
+
+public final class Interval<T extends Comparable<? super T>> implements Comparable<Interval<T>> {
+
+    private final T start;
+    private final T end;
+
+
+    public Interval(T start, T end) {
+        if (start.compareTo(end) > 0)
+            throw new IllegalArgumentException("Start " + start + " is after end " + end);
+
+        this.start = start;
+        this.end = end;
+    }
+
+
+    public T start() {
+        return start;
+    }
+
+    public T end() {
+        return end;
+    }
+
+    public boolean overlaps(T from, T to) {
+        return start.compareTo(to) <= 0 && end.compareTo(from) >= 0;
+    }
+
+    public boolean contains(T point) {
+        return overlaps(point, point);
+    }
+
+    @Override
+    public int compareTo(Interval<T> other) {
+        int comparison = start.compareTo(other.start);
+        return comparison != 0 ? comparison : end.compareTo(other.end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Interval))
+            return false;
+
+        Interval<?> other = (Interval<?>) o;
+        return start.equals(other.start) && end.equals(other.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(start, end);
+    }
+
+    public String toString() {
+        return "[" + start + ", " + end + "]";
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/**
+ * Interval tree on the Red-Black Binary Tree. The intervals are ordered by their start and every node keeps
+ * the greatest end of the intervals in its subtree, which is kept up to date through rotations, insertions
+ * and deletions by an augmentation of the tree.
+ * <p>
+ * A search for the intervals overlapping a range skips every subtree whose greatest end is before the range
+ * and every right subtree whose intervals start after it.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class IntervalTree<T extends Comparable<? super T>> implements Iterable<Interval<T>> {
+
+    private final RedBlackBinaryTree<Interval<T>> tree = new RedBlackBinaryTree<>(IntervalTree::updateMaxEnd);
+
+
+
+
+    public boolean add(Interval<T> interval) {
+        return tree.add(interval);
+    }
+
+
+    public boolean add(T start, T end) {
+        return tree.add(new Interval<>(start, end));
+    }
+
+
+    public boolean remove(Interval<T> interval) {
+        return tree.remove(interval);
+    }
+
+
+    public boolean contains(Interval<T> interval) {
+        return tree.contains(interval);
+    }
+
+
+    public int size() {
+        return tree.size();
+    }
+
+
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+
+    public void clear() {
+        tree.clear();
+    }
+
+
+    /**
+     * Returns an iterator over the intervals ordered by start and then by end
+     */
+
+    public Iterator<Interval<T>> iterator() {
+        return tree.iterator();
+    }
+
+
+    /**
+     * Passes every interval overlapping the closed range [from, to] to the action, ordered by start. The
+     * intervals are passed as they are found, so no list of results is built.
+     */
+
+    public void overlapping(T from, T to, Consumer<? super Interval<T>> action) {
+        if (from.compareTo(to) > 0)
+            throw new IllegalArgumentException("From " + from + " is after to " + to);
+
+        if (!tree.isEmpty())
+            overlapping(tree.root(), from, to, action);
+    }
+
+
+    public List<Interval<T>> overlapping(T from, T to) {
+        List<Interval<T>> result = new ArrayList<>();
+        overlapping(from, to, result::add);
+        return result;
+    }
+
+
+    /**
+     * Passes every interval containing the point to the action, ordered by start
+     */
+
+    public void containing(T point, Consumer<? super Interval<T>> action) {
+        overlapping(point, point, action);
+    }
+
+
+    public List<Interval<T>> containing(T point) {
+        return overlapping(point, point);
+    }
+
+
+    private void overlapping(RedBlackBinaryTree.Node<Interval<T>> node, T from, T to,
+                             Consumer<? super Interval<T>> action) {
+        // no interval in the subtree ends at or after the start of the range
+        if (tree.isNil(node) || maxEnd(node).compareTo(from) < 0)
+            return;
+
+        overlapping(node.left, from, to, action);
+
+        // the node and every interval to the right of it start after the range
+        if (node.data.start().compareTo(to) > 0)
+            return;
+
+        if (node.data.end().compareTo(from) >= 0)
+            action.accept(node.data);
+
+        overlapping(node.right, from, to, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<? super T>> T maxEnd(RedBlackBinaryTree.Node<Interval<T>> node) {
+        return (T) node.summary;
+    }
+
+    /**
+     * Sets the summary of the node to the greatest end in its subtree
+     */
+
+    private static <T extends Comparable<? super T>> void updateMaxEnd(RedBlackBinaryTree.Node<Interval<T>> node) {
+        T max = node.data.end();
+
+        T left = maxEnd(node.left);
+        if (left != null && left.compareTo(max) > 0)
+            max = left;
+
+        T right = maxEnd(node.right);
+        if (right != null && right.compareTo(max) > 0)
+            max = right;
+
+        node.summary = max;
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class IntervalTreeTest {
+
+    private final IntervalTree<Integer> tree = new IntervalTree<>();
+
+
+    @BeforeEach
+    void setUp() {
+        assertTrue(tree.add(1, 3));
+        assertTrue(tree.add(2, 8));
+        assertTrue(tree.add(5, 6));
+        assertTrue(tree.add(7, 7));
+        assertTrue(tree.add(10, 12));
+        assertFalse(tree.add(5, 6));
+    }
+
+    @Test
+    void testOverlapping() {
+        assertEquals("[[2, 8], [5, 6], [7, 7]]", tree.overlapping(4, 7).toString());
+        assertEquals("[[1, 3], [2, 8]]", tree.overlapping(0, 2).toString());
+        assertEquals("[]", tree.overlapping(13, 20).toString());
+        assertEquals("[[10, 12]]", tree.overlapping(9, 10).toString());
+    }
+
+    @Test
+    void testContaining() {
+        assertEquals("[[2, 8], [7, 7]]", tree.containing(7).toString());
+        assertEquals("[]", tree.containing(9).toString());
+    }
+
+    @Test
+    void testOverlappingAfterRemove() {
+        assertTrue(tree.remove(new Interval<>(2, 8)));
+        assertEquals("[[7, 7]]", tree.containing(7).toString());
+        assertEquals("[]", tree.overlapping(4, 4).toString());
+    }
+
+    @Test
+    void testRandomOverlapping() {
+        Random rnd = new Random();
+        IntervalTree<Integer> tested = new IntervalTree<>();
+        Set<Interval<Integer>> oracle = new TreeSet<>();
+
+        for (int n = 0; n < 3000; n++) {
+            int start = rnd.nextInt(1000);
+            Interval<Integer> interval = new Interval<>(start, start + rnd.nextInt(100));
+            if (rnd.nextInt(3) > 0)
+                assertEquals(oracle.add(interval), tested.add(interval));
+            else {
+                Interval<Integer> toRemove = oracle.isEmpty() ? interval : oracle.iterator().next();
+                assertEquals(oracle.remove(toRemove), tested.remove(toRemove));
+            }
+
+            int from = rnd.nextInt(1100);
+            int to = from + rnd.nextInt(50);
+            List<Interval<Integer>> expected = new ArrayList<>();
+            for (Interval<Integer> candidate : oracle) {
+                if (candidate.overlaps(from, to))
+                    expected.add(candidate);
+            }
+            assertEquals(expected, tested.overlapping(from, to));
+        }
+    }
+}
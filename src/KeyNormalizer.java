@@ -0,0 +1,52 @@
+/**
+ * Maps an element to a 64-bit prefix that preserves its order: when the prefix of a is less than the prefix
+ * of b, compared as unsigned longs, a must be less than b. Elements with equal prefixes may be in any order.
+ * With a normalizer the Red-Black Binary Tree keeps the prefix of every element in its node and compares
+ * prefixes before calling compareTo, which is only needed when the prefixes are equal.
+ *
+ * @author August Johnson Palm
+ */
+
+
+@FunctionalInterface
+public interface KeyNormalizer<T> {
+
+
+    /**
+     * Returns the order preserving prefix of the element
+     */
+
+    long prefix(T data);
+
+
+    /**
+     * Packs the first characters of a string into a prefix, encoding each character like UTF-8 encodes a code
+     * point, so ASCII characters take one byte and eight of them fit. Unused bytes are zero. The encoding is
+     * ordered like the characters, so the prefix is ordered like String.compareTo.
+     */
+    KeyNormalizer<String> STRING = data -> {
+        long prefix = 0;
+        int bytes = 0;
+        for (int i = 0; i < data.length() && bytes < Long.BYTES; i++) {
+            char c = data.charAt(i);
+
+            int encoded, length;
+            if (c < 0x80) {
+                encoded = c;
+                length = 1;
+            } else if (c < 0x800) {
+                encoded = (0xC0 | c >>> 6) << 8 | (0x80 | c & 0x3F);
+                length = 2;
+            } else {
+                encoded = (0xE0 | c >>> 12) << 16 | (0x80 | c >>> 6 & 0x3F) << 8 | (0x80 | c & 0x3F);
+                length = 3;
+            }
+
+            // the last character may not fit, then only its first bytes are kept
+            int kept = Math.min(length, Long.BYTES - bytes);
+            prefix = prefix << 8 * kept | encoded >>> 8 * (length - kept);
+            bytes += kept;
+        }
+        return bytes == 0 ? 0 : prefix << 8 * (Long.BYTES - bytes);
+    };
+}
@@ -0,0 +1,232 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Measures the latency of single operations on RedBlackBinaryTree and MyTreeSet, to show the tail that the
+ * average hides. The operations are issued open loop at a fixed rate and every latency is taken from the time
+ * the operation was due, not from when it started, so a slow operation also counts against the operations
+ * queued behind it.
+ * <p>
+ * The workloads are
+ * <ul>
+ * <li>mixed: lookups, insertions and deletions of random keys in a tree of a fixed size</li>
+ * <li>read mostly: like mixed but nine of ten operations are lookups</li>
+ * <li>skewed: lookups only, where four of five go to one percent of the keys, which a splay tree keeps near
+ * the root</li>
+ * <li>ascending: insertions of ever larger keys, which rotate and recolor up the right spine</li>
+ * <li>cascade: deletions of a leaf from a perfect tree of only black nodes, where the deletion leaves a
+ * black height deficit that balanceDeletion1 carries all the way to the root. The cascade recolors the
+ * siblings along the path red, after which no deletion in the tree cascades again, so the tree is rebuilt
+ * without timing it before every deletion and the workload runs a sixteenth of the operations.</li>
+ * </ul>
+ * The tree is run with every BalancingPolicy, to compare the shallower AVL tree against the cheaper updates of
+ * the red-black and WAVL trees for each mix. In the cascade workload only the red-black tree cascades.
+ * <p>
+ * Run with java LatencyBenchmark [operations] [operations per second] [csv file]. The csv file gets one line
+ * for every workload and target, for comparing revisions.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class LatencyBenchmark {
+
+    private static final int ROUNDS = 3; // the first rounds warm up the JIT and are not reported
+    private static final int KEY_RANGE = 1 << 16; // keys of the mixed workload
+    private static final int HOT_KEYS = KEY_RANGE / 200; // one percent of the keys in the tree, spread out
+    private static final int TREE_HEIGHT = 12; // the perfect tree of the cascade workload has 2^12 - 1 nodes
+    private static final int CASCADE_SHARE = 16; // the cascade workload runs this share of the operations
+
+
+    /**
+     * The operations of a set under test
+     */
+    private interface Target {
+
+        boolean add(Long key);
+
+        boolean remove(Long key);
+
+        boolean contains(Long key);
+
+        /**
+         * Replaces the elements with the sorted keys without timing it, building a tree of minimal height
+         */
+
+        void load(Long[] sorted);
+    }
+
+
+    private enum Workload {
+        MIXED, READ_MOSTLY, SKEWED, ASCENDING, CASCADE
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long rate = args.length > 1 ? Long.parseLong(args[1]) : 200_000;
+        PrintWriter csv = args.length > 2 ? new PrintWriter(new FileWriter(args[2])) : null;
+
+        if (csv != null)
+            csv.println("workload,target,count,p50,p99,p99.9,max");
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (Workload workload : Workload.values()) {
+                for (BalancingPolicy policy : BalancingPolicy.values())
+                    report(round, workload, policy.name().toLowerCase(), run(workload, tree(policy), operations, rate),
+                            csv);
+                report(round, workload, "set", run(workload, set(), operations, rate), csv);
+            }
+        }
+
+        if (csv != null)
+            csv.close();
+    }
+
+    private static void report(int round, Workload workload, String target, LatencyHistogram latencies,
+                               PrintWriter csv) {
+        if (round <= ROUNDS / 2)
+            return;
+
+        System.out.printf("round %d, %-11s %-9s: p50 %7d, p99 %7d, p99.9 %8d, max %9d ns%n", round,
+                workload.name().toLowerCase(), target, latencies.percentile(50), latencies.percentile(99),
+                latencies.percentile(99.9), latencies.max());
+
+        if (csv != null && round == ROUNDS)
+            csv.printf("%s,%s,%d,%d,%d,%d,%d%n", workload.name().toLowerCase(), target, latencies.count(),
+                    latencies.percentile(50), latencies.percentile(99), latencies.percentile(99.9), latencies.max());
+    }
+
+    /**
+     * Runs the workload on the target at the given rate
+     *
+     * @return the latency of every operation
+     */
+
+    private static LatencyHistogram run(Workload workload, Target target, int operations, long rate) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        Random rnd = new Random(42);
+        long interval = 1_000_000_000L / rate;
+
+        // boxed up front so that no operation pays for an allocation of its key
+        Long[] keys = new Long[Math.max(KEY_RANGE, operations)];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = (long) i;
+
+        Long[] perfect = Arrays.copyOf(keys, (1 << TREE_HEIGHT) - 1);
+        if (workload == Workload.MIXED || workload == Workload.READ_MOSTLY || workload == Workload.SKEWED)
+            target.load(Arrays.copyOf(keys, KEY_RANGE / 2));
+        if (workload == Workload.CASCADE)
+            operations /= CASCADE_SHARE;
+
+        long start = System.nanoTime();
+        for (int n = 0, due = 0; n < operations; n++, due++) {
+            if (workload == Workload.CASCADE) {
+                // setting up the tree is not timed, the schedule starts over after it
+                target.load(perfect);
+                start = System.nanoTime();
+                due = 0;
+            }
+
+            long dueTime = start + due * interval;
+            while (System.nanoTime() < dueTime)
+                Thread.onSpinWait();
+
+            switch (workload) {
+                case MIXED -> {
+                    Long key = keys[rnd.nextInt(KEY_RANGE)];
+                    switch (rnd.nextInt(4)) {
+                        case 0 -> target.add(key);
+                        case 1 -> target.remove(key);
+                        default -> target.contains(key);
+                    }
+                }
+                case READ_MOSTLY -> {
+                    Long key = keys[rnd.nextInt(KEY_RANGE)];
+                    switch (rnd.nextInt(20)) {
+                        case 0 -> target.add(key);
+                        case 1 -> target.remove(key);
+                        default -> target.contains(key);
+                    }
+                }
+                case SKEWED -> {
+                    boolean hot = rnd.nextInt(5) != 0;
+                    target.contains(keys[hot ? rnd.nextInt(HOT_KEYS) * 100 : rnd.nextInt(KEY_RANGE / 2)]);
+                }
+                case ASCENDING -> target.add(keys[n]);
+                case CASCADE -> target.remove(perfect[2 * rnd.nextInt(perfect.length / 2 + 1)]); // a leaf
+            }
+            latencies.record(System.nanoTime() - dueTime);
+        }
+        return latencies;
+    }
+
+    private static Target tree(BalancingPolicy policy) {
+        RedBlackBinaryTree<Long> tree = new RedBlackBinaryTree<>(policy);
+        return new Target() {
+            public boolean add(Long key) {
+                return tree.add(key);
+            }
+
+            public boolean remove(Long key) {
+                return tree.remove(key);
+            }
+
+            public boolean contains(Long key) {
+                return tree.contains(key);
+            }
+
+            public void load(Long[] sorted) {
+                tree.buildFromSorted(Arrays.asList(sorted).iterator(), sorted.length);
+            }
+        };
+    }
+
+    private static Target set() {
+        MyTreeSet<Long> set = new MyTreeSet<>();
+        return new Target() {
+
+            private Long[] snapshotOf; // the keys of the snapshot, which is kept for loading them again
+            private byte[] snapshot;
+
+            public boolean add(Long key) {
+                return set.add(key);
+            }
+
+            public boolean remove(Long key) {
+                return set.remove(key);
+            }
+
+            public boolean contains(Long key) {
+                return set.contains(key);
+            }
+
+            public void load(Long[] sorted) {
+                // the set builds its tree from sorted elements when it reads a snapshot
+                try {
+                    if (snapshotOf != sorted) {
+                        MyTreeSet<Long> source = new MyTreeSet<>();
+                        for (Long key : sorted)
+                            source.add(key);
+
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        source.writeSnapshot(Channels.newChannel(bytes), SnapshotCodec.LONG);
+                        snapshot = bytes.toByteArray();
+                        snapshotOf = sorted;
+                    }
+                    set.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)), SnapshotCodec.LONG);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
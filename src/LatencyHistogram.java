@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+
+/**
+ * Histogram of latencies in nanoseconds with buckets like an HDR histogram: values below 128 get a bucket
+ * each, and every power of two above is split into 64 buckets, so a recorded value is off by less than 1.6%
+ * at any magnitude while the whole range of longs takes a fixed array of 3776 counts.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // exact values below this
+    private static final int HALF = SUB_BUCKETS / 2; // buckets per power of two above it
+
+    private final long[] counts = new long[SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * HALF];
+    private long count;
+    private long max;
+    private double sum;
+
+
+    /**
+     * Records a latency, negative values are recorded as 0
+     */
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+
+    /**
+     * Adds every value recorded by the other histogram
+     */
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+
+    public long count() {
+        return count;
+    }
+
+
+    public long max() {
+        return max;
+    }
+
+
+    public double mean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+
+    /**
+     * Returns the value below or at which the given percentage of the values are, as the greatest value of its
+     * bucket but never above the greatest recorded value
+     *
+     * @param percentile between 0 and 100
+     */
+
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, Math.round(percentile / 100 * count)); // rounded like HdrHistogram does
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestValue(i), max);
+        }
+        return max;
+    }
+
+
+    public String toString() {
+        return String.format("p50 %d, p99 %d, p99.9 %d, max %d ns over %d", percentile(50), percentile(99),
+                percentile(99.9), max, count);
+    }
+
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        // the highest bit picks the power of two and the 6 bits below it the bucket within it
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long top = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+}
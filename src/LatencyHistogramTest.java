@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+
+    @Test
+    void testSmallValuesAreExact() {
+        for (long n = 1; n <= 100; n++)
+            histogram.record(n);
+
+        assertEquals(100, histogram.count());
+        assertEquals(50, histogram.percentile(50));
+        assertEquals(99, histogram.percentile(99));
+        assertEquals(100, histogram.percentile(100));
+        assertEquals(50.5, histogram.mean());
+    }
+
+    @Test
+    void testLargeValuesWithinPrecision() {
+        for (long value = 1000; value < Long.MAX_VALUE / 3; value *= 3) {
+            histogram.reset();
+            histogram.record(value);
+            histogram.record(2 * value);
+            long p50 = histogram.percentile(50);
+            assertTrue(p50 >= value && p50 <= value * 1.016, value + " recorded as " + p50);
+            assertEquals(2 * value, histogram.percentile(100));
+        }
+    }
+
+    @Test
+    void testTail() {
+        for (int n = 0; n < 999; n++)
+            histogram.record(100);
+        histogram.record(1_000_000);
+
+        assertEquals(100, histogram.percentile(99));
+        assertEquals(100, histogram.percentile(99.9));
+        assertEquals(1_000_000, histogram.max());
+
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(-5);
+        histogram.add(other);
+        assertEquals(1001, histogram.count());
+        assertEquals(0, histogram.percentile(0));
+    }
+}
@@ -0,0 +1,370 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+
+/**
+ * Sorted set of longs for large, dense sets of ids, where a node per key costs many times the key itself.
+ * The keys are split like in Roaring bitmaps: the high 48 bits pick a block, one for every range of 65536
+ * keys, and the block holds the low 16 bits of its keys either as a sorted array of chars or, once it has
+ * more than 4096 keys, as a bitmap of 1024 longs. A bitmap only turns back into an array below 3584 keys,
+ * so adding and removing a key at the boundary does not convert the block every time. A key then takes
+ * 2 bytes in a sparse block and at most 8 KiB / 3584, about 2.3 bytes, falling towards 1 bit, in a dense one.
+ * <p>
+ * The blocks are kept in a Red-Black Binary Tree ordered by their high bits, so finding a block takes
+ * O(log b) for b blocks, and the neighbouring block is reached through the threaded links of the tree. Within
+ * a block an array is binary searched and a bitmap is scanned a word of 64 keys at a time.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class LongBlockSet implements Iterable<Long> {
+
+
+    /**
+     * Inner class representing the keys sharing the same high 48 bits. Exactly one of array and bitmap is
+     * in use, and a block in the tree is never empty.
+     */
+    private static class Block implements Comparable<Block> {
+
+        static final int MAX_ARRAY_SIZE = 4096; // past this a bitmap takes less space than an array
+        static final int MIN_BITMAP_SIZE = MAX_ARRAY_SIZE - MAX_ARRAY_SIZE / 8; // below this a bitmap is converted back
+        static final int BITMAP_WORDS = 1 << 10;
+
+        long high;
+        char[] array = new char[4];
+        long[] bitmap; // null while the keys are in the array
+        int size;
+
+        Block(long high) {
+            this.high = high;
+        }
+
+        @Override
+        public int compareTo(Block other) {
+            return Long.compare(high, other.high);
+        }
+
+        boolean contains(int low) {
+            if (bitmap != null)
+                return (bitmap[low >>> 6] & (1L << low)) != 0;
+
+            return Arrays.binarySearch(array, 0, size, (char) low) >= 0;
+        }
+
+        boolean add(int low) {
+            if (bitmap != null) {
+                long before = bitmap[low >>> 6];
+                bitmap[low >>> 6] = before | (1L << low);
+                if (before == bitmap[low >>> 6])
+                    return false;
+
+                size++;
+                return true;
+            }
+
+            int index = Arrays.binarySearch(array, 0, size, (char) low);
+            if (index >= 0)
+                return false;
+
+            if (size == MAX_ARRAY_SIZE) {
+                toBitmap();
+                return add(low);
+            }
+
+            index = -index - 1;
+            if (size == array.length)
+                array = Arrays.copyOf(array, Math.min(2 * size, MAX_ARRAY_SIZE));
+            System.arraycopy(array, index, array, index + 1, size - index);
+            array[index] = (char) low;
+            size++;
+            return true;
+        }
+
+        boolean remove(int low) {
+            if (bitmap != null) {
+                long before = bitmap[low >>> 6];
+                bitmap[low >>> 6] = before & ~(1L << low);
+                if (before == bitmap[low >>> 6])
+                    return false;
+
+                if (--size < MIN_BITMAP_SIZE)
+                    toArray();
+                return true;
+            }
+
+            int index = Arrays.binarySearch(array, 0, size, (char) low);
+            if (index < 0)
+                return false;
+
+            System.arraycopy(array, index + 1, array, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        int first() {
+            return bitmap != null ? higher(-1) : array[0];
+        }
+
+        int last() {
+            return bitmap != null ? lower(1 << 16) : array[size - 1];
+        }
+
+        /**
+         * Returns the greatest low bits less than the given ones, or -1 if there are none
+         */
+
+        int lower(int low) {
+            if (bitmap == null) {
+                int index = Arrays.binarySearch(array, 0, size, (char) low);
+                index = index >= 0 ? index - 1 : -index - 2;
+                return index >= 0 ? array[index] : -1;
+            }
+
+            if (low == 0)
+                return -1;
+
+            int end = low - 1; // the greatest low bits that may be returned
+            int word = end >>> 6;
+            long bits = bitmap[word] & (-1L >>> (63 - (end & 63)));
+            while (bits == 0) {
+                if (--word < 0)
+                    return -1;
+                bits = bitmap[word];
+            }
+            return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+        }
+
+        /**
+         * Returns the least low bits greater than the given ones, or -1 if there are none
+         */
+
+        int higher(int low) {
+            if (bitmap == null) {
+                int index = Arrays.binarySearch(array, 0, size, (char) low);
+                index = index >= 0 ? index + 1 : -index - 1;
+                return index < size ? array[index] : -1;
+            }
+
+            int start = low + 1; // the least low bits that may be returned
+            if (start == 1 << 16)
+                return -1;
+
+            int word = start >>> 6;
+            long bits = bitmap[word] & (-1L << start);
+            while (bits == 0) {
+                if (++word == BITMAP_WORDS)
+                    return -1;
+                bits = bitmap[word];
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+
+        private void toBitmap() {
+            bitmap = new long[BITMAP_WORDS];
+            for (int i = 0; i < size; i++)
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            array = null;
+        }
+
+        private void toArray() {
+            array = new char[MAX_ARRAY_SIZE];
+            int index = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                for (long bits = bitmap[word]; bits != 0; bits &= bits - 1)
+                    array[index++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+            }
+            bitmap = null;
+        }
+    }
+
+
+    private final RedBlackBinaryTree<Block> blocks = new RedBlackBinaryTree<>();
+    private final Block probe = new Block(0); // reused to look blocks up by their high bits
+
+    private long size = 0;
+    private int modCount = 0;
+
+
+
+
+    public boolean add(long key) {
+        RedBlackBinaryTree.Node<Block> node = blocks.getNode(probe(key));
+        if (node == null)
+            node = blocks.insert(new Block(key >> 16));
+
+        if (!node.data.add(low(key)))
+            return false;
+
+        size++;
+        modCount++;
+        return true;
+    }
+
+
+    public boolean remove(long key) {
+        RedBlackBinaryTree.Node<Block> node = blocks.getNode(probe(key));
+        if (node == null || !node.data.remove(low(key)))
+            return false;
+
+        if (node.data.size == 0)
+            blocks.delete(node);
+
+        size--;
+        modCount++;
+        return true;
+    }
+
+
+    public boolean contains(long key) {
+        RedBlackBinaryTree.Node<Block> node = blocks.getNode(probe(key));
+        return node != null && node.data.contains(low(key));
+    }
+
+
+    /**
+     * Returns the greatest key less than the given key, or null if there is none
+     */
+
+    public Long lower(long key) {
+        RedBlackBinaryTree.Node<Block> node = blocks.getNode(probe(key));
+        if (node != null) {
+            int low = node.data.lower(low(key));
+            if (low >= 0)
+                return key(node.data, low);
+        }
+
+        node = blocks.lowerNode(probe(key));
+        return node == null ? null : key(node.data, node.data.last());
+    }
+
+
+    /**
+     * Returns the least key greater than the given key, or null if there is none
+     */
+
+    public Long higher(long key) {
+        RedBlackBinaryTree.Node<Block> node = blocks.getNode(probe(key));
+        if (node != null) {
+            int low = node.data.higher(low(key));
+            if (low >= 0)
+                return key(node.data, low);
+        }
+
+        node = blocks.higherNode(probe(key));
+        return node == null ? null : key(node.data, node.data.first());
+    }
+
+
+    public Long first() {
+        RedBlackBinaryTree.Node<Block> node = blocks.firstNode();
+        return node == null ? null : key(node.data, node.data.first());
+    }
+
+
+    public Long last() {
+        RedBlackBinaryTree.Node<Block> node = blocks.lastNode();
+        return node == null ? null : key(node.data, node.data.last());
+    }
+
+
+    /**
+     * Returns the number of keys, or Integer.MAX_VALUE if there are more
+     */
+
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+
+    public long longSize() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    public void clear() {
+        blocks.clear();
+        size = 0;
+        modCount++;
+    }
+
+
+    /**
+     * Returns the number of blocks the keys are kept in
+     */
+
+    public int blockCount() {
+        return blocks.size();
+    }
+
+
+    /**
+     * Returns an iterator over the keys in ascending order
+     */
+
+    public PrimitiveIterator.OfLong iterator() {
+        return new KeyIterator();
+    }
+
+
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (PrimitiveIterator.OfLong i = iterator(); i.hasNext(); ) {
+            builder.append(i.nextLong());
+            if (i.hasNext())
+                builder.append(", ");
+        }
+        return builder.append("]").toString();
+    }
+
+
+    private Block probe(long key) {
+        probe.high = key >> 16;
+        return probe;
+    }
+
+    private static int low(long key) {
+        return (int) key & 0xFFFF;
+    }
+
+    private static long key(Block block, int low) {
+        return block.high << 16 | low;
+    }
+
+
+    private class KeyIterator implements PrimitiveIterator.OfLong {
+
+        private RedBlackBinaryTree.Node<Block> node = blocks.firstNode();
+        private int low = node == null ? -1 : node.data.first();
+        private final int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return node != null;
+        }
+
+        @Override
+        public long nextLong() {
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            long key = key(node.data, low);
+            low = node.data.higher(low);
+            if (low < 0) {
+                node = blocks.nextNode(node);
+                if (node != null)
+                    low = node.data.first();
+            }
+            return key;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class LongBlockSetTest {
+
+    private final LongBlockSet set = new LongBlockSet();
+
+
+    @Test
+    void testSparseKeys() {
+        assertTrue(set.add(5));
+        assertTrue(set.add(-5));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertFalse(set.add(5));
+        assertEquals(4, set.size());
+        assertEquals(4, set.blockCount());
+
+        assertEquals(Long.MIN_VALUE, set.first());
+        assertEquals(Long.MAX_VALUE, set.last());
+        assertEquals(-5L, set.lower(5));
+        assertEquals(5L, set.higher(-5));
+        assertNull(set.lower(Long.MIN_VALUE));
+        assertNull(set.higher(Long.MAX_VALUE));
+        assertEquals("[" + Long.MIN_VALUE + ", -5, 5, " + Long.MAX_VALUE + "]", set.toString());
+
+        assertTrue(set.remove(-5));
+        assertFalse(set.contains(-5));
+        assertEquals(3, set.blockCount());
+    }
+
+    @Test
+    void testDenseBlock() {
+        for (long key = 0; key < 65536; key += 2)
+            assertTrue(set.add(key));
+        assertEquals(1, set.blockCount());
+        assertEquals(32768, set.size());
+
+        assertTrue(set.contains(65534));
+        assertFalse(set.contains(65535));
+        assertEquals(65534L, set.lower(65535));
+        assertEquals(65536L - 2, set.last());
+        assertNull(set.higher(65534));
+
+        for (long key = 0; key < 65536; key += 2)
+            if (key % 64 != 0)
+                assertTrue(set.remove(key));
+        assertEquals(1024, set.size());
+        assertEquals(64L, set.higher(0));
+    }
+
+    @Test
+    void testAddAndRemoveAroundConversion() {
+        for (long key = 0; key < 4096; key++)
+            assertTrue(set.add(key * 3));
+        for (int n = 0; n < 100; n++) {
+            assertTrue(set.add(1)); // a bitmap with 4097 keys
+            assertTrue(set.remove(1)); // stays a bitmap with 4096 keys
+        }
+        for (long key = 4095; key >= 3000; key--)
+            assertTrue(set.remove(key * 3)); // back to an array on the way down
+
+        assertEquals(3000, set.size());
+        assertEquals(2999L * 3, set.last());
+        assertFalse(set.contains(1));
+        assertEquals(3L, set.higher(0));
+    }
+
+    @Test
+    void testRandomAgainstTreeSet() {
+        Random rnd = new Random();
+        TreeSet<Long> oracle = new TreeSet<>();
+
+        for (int n = 0; n < 100000; n++) {
+            // keys around a few block bounds, dense enough for blocks to become bitmaps and back
+            long key = (rnd.nextInt(3) - 1) * 65536L + rnd.nextInt(12000) - 6000;
+            if (rnd.nextInt(3) > 0)
+                assertEquals(oracle.add(key), set.add(key));
+            else
+                assertEquals(oracle.remove(key), set.remove(key));
+
+            long probe = key + rnd.nextInt(200) - 100;
+            assertEquals(oracle.contains(probe), set.contains(probe));
+            assertEquals(oracle.lower(probe), set.lower(probe));
+            assertEquals(oracle.higher(probe), set.higher(probe));
+        }
+        assertEquals(oracle.size(), set.size());
+
+        PrimitiveIterator.OfLong i = set.iterator();
+        for (long expected : oracle)
+            assertEquals(expected, i.nextLong());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    void testIteratorAfterModification() {
+        set.add(1);
+        PrimitiveIterator.OfLong i = set.iterator();
+        set.add(2);
+        assertThrows(ConcurrentModificationException.class, i::nextLong);
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Iterator over the sorted union of several Red-Black Binary Trees. The trees are merged lazily by keeping the
+ * next element of every tree in a binary heap, so taking an element costs O(log k) for k trees and the union
+ * is never built. Elements found in several trees are only returned once.
+ * <p>
+ * The iterator can be moved with seek, after which it continues from the given element in every tree.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class MergedIterator<T extends Comparable<? super T>> implements Iterator<T> {
+
+
+    /**
+     * Inner class representing one of the merged trees and its next element
+     */
+    private static class Source<T extends Comparable<? super T>> {
+
+        final RedBlackBinaryTree<T> tree;
+        Iterator<T> iterator;
+        T head;
+
+        Source(RedBlackBinaryTree<T> tree) {
+            this.tree = tree;
+        }
+
+        boolean advance() {
+            head = iterator.hasNext() ? iterator.next() : null;
+            return head != null;
+        }
+    }
+
+
+    private final boolean descending;
+
+    private final Source<T>[] sources;
+    private final Source<T>[] heap; // sources that are not exhausted, ordered by their head
+    private int heapSize;
+
+
+    @SuppressWarnings("unchecked")
+    MergedIterator(List<RedBlackBinaryTree<T>> trees, boolean descending) {
+        this.descending = descending;
+
+        sources = (Source<T>[]) new Source<?>[trees.size()];
+        heap = (Source<T>[]) new Source<?>[trees.size()];
+        for (int n = 0; n < sources.length; n++) {
+            sources[n] = new Source<>(trees.get(n));
+            sources[n].iterator = descending ? trees.get(n).descendingIterator() : trees.get(n).iterator();
+        }
+        buildHeap();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return heapSize > 0;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        T result = heap[0].head;
+
+        // advance every source whose head is the returned element, they are all at the top of the heap
+        while (heapSize > 0 && heap[0].head.compareTo(result) == 0) {
+            if (heap[0].advance())
+                siftDown(0);
+            else
+                removeTop();
+        }
+        return result;
+    }
+
+    /**
+     * Moves the iterator so that the next element is the least element greater than or equal to the given
+     * one, or if descending the greatest element less than or equal to it. Costs O(k log n) for k trees.
+     *
+     * @param data the element to continue from
+     */
+
+    public void seek(T data) {
+        for (Source<T> source : sources)
+            source.iterator = source.tree.iteratorFrom(data, descending);
+
+        buildHeap();
+    }
+
+    private void buildHeap() {
+        heapSize = 0;
+        for (Source<T> source : sources) {
+            if (source.advance())
+                heap[heapSize++] = source;
+        }
+        for (int n = heapSize / 2 - 1; n >= 0; n--)
+            siftDown(n);
+    }
+
+    private void removeTop() {
+        heap[0] = heap[--heapSize];
+        heap[heapSize] = null;
+        if (heapSize > 0)
+            siftDown(0);
+    }
+
+    private void siftDown(int index) {
+        Source<T> source = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize)
+                break;
+
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+                child++;
+
+            if (!before(heap[child], source))
+                break;
+
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = source;
+    }
+
+    private boolean before(Source<T> source, Source<T> other) {
+        int comparison = source.head.compareTo(other.head);
+        return descending ? comparison > 0 : comparison < 0;
+    }
+}
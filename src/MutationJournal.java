@@ -0,0 +1,357 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Append-only journal of the mutations of a MyTreeSet, kept in a directory together with the latest snapshot
+ * of the set. Opening a journal loads the snapshot and replays the journal on top of it before the journal is
+ * attached to the set, after which every mutation of the set is appended to the journal.
+ * <p>
+ * Mutations are collected in memory and written with a single write and fsync at a time (group commit),
+ * either by a background thread every flush interval or by a call to sync(). A mutation is thus durable at
+ * most one flush interval after it was made, or as soon as sync() returns.
+ * <p>
+ * Every record holds its length, the kind of mutation, the encoded element and a CRC32C checksum. A record
+ * torn by a crash is detected by its checksum and cut from the journal when it is replayed.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class MutationJournal<T extends Comparable<? super T>> implements Closeable {
+
+
+    /**
+     * Inner Enum representing the kinds of mutations recorded in the journal
+     */
+    enum Mutation {
+        ADD, REMOVE, CLEAR, REMOVE_RANGE
+    }
+
+
+    static final String SNAPSHOT_FILE = "snapshot";
+    static final String JOURNAL_FILE = "journal";
+
+    private static final int RECORD_HEADER_SIZE = 4;
+    private static final int CHECKSUM_SIZE = 4;
+
+    private final Path directory;
+    private final MyTreeSet<T> set;
+    private final SnapshotCodec<T> codec;
+    private final FileChannel channel;
+
+    private final Object lock = new Object(); // guards the pending records and the fields below
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private long logged; // number of records logged
+    private long durable; // number of records written and forced to disk
+    private boolean flushing; // a thread is writing a batch of records outside the lock
+    private IOException failure; // the first failed write, after which nothing more is logged
+
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32C checksum = new CRC32C();
+
+    private final ScheduledExecutorService flusher;
+
+
+    private MutationJournal(Path directory, MyTreeSet<T> set, SnapshotCodec<T> codec, FileChannel channel,
+                            long flushIntervalMillis) {
+        this.directory = directory;
+        this.set = set;
+        this.codec = codec;
+        this.channel = channel;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MutationJournal flusher " + directory);
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the journal in the directory, creating it if needed. The content of the set is replaced with the
+     * latest snapshot and the mutations journaled after it, then the journal is attached to the set.
+     *
+     * @param directory           the directory holding the snapshot and the journal
+     * @param set                 the set to be recovered and journaled
+     * @param codec               the codec encoding the elements
+     * @param flushIntervalMillis the longest time a mutation is kept in memory before it is made durable
+     */
+
+    public static <T extends Comparable<? super T>> MutationJournal<T> open(Path directory, MyTreeSet<T> set,
+                                                                             SnapshotCodec<T> codec,
+                                                                             long flushIntervalMillis)
+            throws IOException {
+        Files.createDirectories(directory);
+
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                set.readSnapshot(in, codec);
+            }
+        } else
+            set.clear();
+
+        FileChannel channel = FileChannel.open(directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            replay(channel, set, codec);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        MutationJournal<T> journal = new MutationJournal<>(directory, set, codec, channel, flushIntervalMillis);
+        set.attachJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Applies the records of the journal to the set. Reading stops at the first incomplete or damaged record,
+     * which can only be the last one written before a crash, and the journal is cut there.
+     */
+
+    private static <T extends Comparable<? super T>> void replay(FileChannel channel, MyTreeSet<T> set,
+                                                                 SnapshotCodec<T> codec) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        CRC32C checksum = new CRC32C();
+        long position = 0;
+        long end = channel.size();
+
+        while (end - position >= RECORD_HEADER_SIZE) {
+            header.clear();
+            channel.read(header, position);
+            int length = header.flip().getInt();
+            if (length <= 0 || length > end - position - RECORD_HEADER_SIZE - CHECKSUM_SIZE)
+                break;
+
+            ByteBuffer body = ByteBuffer.allocate(length + CHECKSUM_SIZE);
+            while (body.hasRemaining())
+                channel.read(body, position + RECORD_HEADER_SIZE + body.position());
+
+            checksum.reset();
+            checksum.update(body.array(), 0, length);
+            if ((int) checksum.getValue() != body.getInt(length))
+                break;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array(), 0, length));
+            Mutation mutation = Mutation.values()[in.readByte()];
+            if (mutation == Mutation.CLEAR)
+                set.clear();
+            else if (mutation == Mutation.ADD)
+                set.add(codec.read(null, in));
+            else if (mutation == Mutation.REMOVE)
+                set.remove(codec.read(null, in));
+            else {
+                // a byte telling which of the bounds are written comes before them
+                byte bounds = in.readByte();
+                T from = (bounds & 1) != 0 ? codec.read(null, in) : null;
+                T to = (bounds & 2) != 0 ? codec.read(null, in) : null;
+                set.removeRange(from, to);
+            }
+
+            position += RECORD_HEADER_SIZE + length + CHECKSUM_SIZE;
+        }
+
+        channel.truncate(position);
+        channel.position(position);
+    }
+
+    /**
+     * Appends a mutation to the records waiting to be written. Called by the set after it has been modified.
+     *
+     * @param mutation the kind of mutation
+     * @param data     the element added or removed, null for CLEAR
+     */
+
+    void log(Mutation mutation, T data) {
+        log(mutation, data, null);
+    }
+
+    /**
+     * Appends the removal of a range to the records waiting to be written
+     *
+     * @param from the least element removed or null if the range has no lower bound
+     * @param to   the element above the greatest element removed or null if the range has no upper bound
+     */
+
+    void logRange(T from, T to) {
+        log(Mutation.REMOVE_RANGE, from, to);
+    }
+
+    private void log(Mutation mutation, T data, T to) {
+        synchronized (lock) {
+            if (failure != null)
+                throw new UncheckedIOException("Journal failed, mutations are no longer durable", failure);
+
+            try {
+                record.reset();
+                recordOut.writeByte(mutation.ordinal());
+                if (mutation == Mutation.REMOVE_RANGE)
+                    recordOut.writeByte((data != null ? 1 : 0) | (to != null ? 2 : 0));
+                if (data != null)
+                    codec.write(null, data, recordOut);
+                if (to != null)
+                    codec.write(null, to, recordOut);
+
+                byte[] body = record.toByteArray();
+                checksum.reset();
+                checksum.update(body);
+
+                DataOutputStream out = new DataOutputStream(pending);
+                out.writeInt(body.length);
+                out.write(body);
+                out.writeInt((int) checksum.getValue());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // only the codec can fail writing to memory
+            }
+            logged++;
+        }
+    }
+
+    /**
+     * Blocks until every mutation made before the call is durable. When several threads call sync at the same
+     * time one of them writes and forces the records of all of them while the others wait for it.
+     */
+
+    public void sync() throws IOException {
+        long target;
+        synchronized (lock) {
+            target = logged;
+        }
+        flush(target);
+    }
+
+    /**
+     * Writes the set to a new snapshot and empties the journal. The snapshot is written to a temporary file
+     * and moved in place before the journal is cut, so a crash at any point leaves a snapshot and a journal
+     * that together hold every durable mutation. Replaying mutations already in the snapshot is harmless
+     * since the last mutation of every element decides if the element is in the set.
+     * The set must not be modified during the compaction.
+     */
+
+    public void compact() throws IOException {
+        sync();
+
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            set.writeSnapshot(out, codec);
+            out.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (lock) {
+            while (flushing)
+                awaitFlush();
+
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Makes every mutation durable, detaches the journal from the set and closes the journal file
+     */
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        set.attachJournal(null);
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Makes the first target records durable. If another thread is already writing a batch the thread waits
+     * for it and then checks if its records were part of that batch before writing the next batch itself.
+     */
+
+    private void flush(long target) throws IOException {
+        ByteArrayOutputStream batch;
+        long batchEnd;
+
+        synchronized (lock) {
+            while (true) {
+                if (failure != null)
+                    throw failure;
+                if (durable >= target)
+                    return;
+                if (!flushing)
+                    break;
+
+                awaitFlush();
+            }
+
+            // swap buffers so other threads keep logging while the batch is written
+            batch = pending;
+            pending = spare;
+            spare = batch;
+            batchEnd = logged;
+            flushing = true;
+        }
+
+        IOException error = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        }
+
+        synchronized (lock) {
+            batch.reset();
+            flushing = false;
+            if (error == null)
+                durable = batchEnd;
+            else if (failure == null)
+                failure = error;
+
+            lock.notifyAll();
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private void flushQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // kept in failure and thrown by the next mutation or sync
+        }
+    }
+
+    private void awaitFlush() {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.AbstractMap;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+
+/**
+ * Implementation of TreeMap on the same Red-Black Binary Tree as MyTreeSet. The value of a key is kept in
+ * the node of the key, so every operation finds both with a single descent of the tree.
+ * <p>
+ * Entries handed out are snapshots of the mapping when they were created, like the entries returned by
+ * the navigation methods of java.util.TreeMap.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class MyTreeMap<K extends Comparable<? super K>, V> implements Iterable<Map.Entry<K, V>> {
+
+    private final RedBlackBinaryTree<K> tree = new RedBlackBinaryTree<>();
+
+
+
+
+    public V get(K key) {
+        return valueOf(tree.getNode(key));
+    }
+
+
+    public boolean containsKey(K key) {
+        return tree.getNode(key) != null;
+    }
+
+
+    /**
+     * Maps the key to the value
+     *
+     * @return the previous value of the key or null if it had none
+     */
+
+    public V put(K key, V value) {
+        RedBlackBinaryTree.Node<K> node = insert(key);
+        V previous = valueOf(node);
+        node.value = value;
+        return previous;
+    }
+
+
+    public V remove(K key) {
+        RedBlackBinaryTree.Node<K> node = tree.getNode(key);
+        if (node == null)
+            return null;
+
+        V value = valueOf(node);
+        tree.delete(node);
+        return value;
+    }
+
+
+    /**
+     * Returns the value of the key, first mapping it to the value computed by the function if it has none.
+     * Nothing is mapped if the function returns null or throws, and the function must not change the map.
+     */
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        int originalSize = tree.size();
+        RedBlackBinaryTree.Node<K> node = insert(key);
+        boolean inserted = tree.size() > originalSize;
+        if (!inserted && node.value != null)
+            return valueOf(node);
+
+        int expectedModCount = tree.modCount();
+        V value;
+        try {
+            value = mappingFunction.apply(key);
+        } catch (RuntimeException | Error e) {
+            if (inserted && tree.modCount() == expectedModCount)
+                tree.delete(node); // the node was only inserted for the value
+            throw e;
+        }
+        if (tree.modCount() != expectedModCount)
+            throw new ConcurrentModificationException(); // the node may no longer hold the key
+
+        if (value == null) {
+            if (inserted)
+                tree.delete(node);
+            return null;
+        }
+        node.value = value;
+        return value;
+    }
+
+
+    /**
+     * Maps the key to the value if it has none, otherwise to the result of the function applied to the old and
+     * the given value. The key is removed if the function returns null.
+     *
+     * @return the new value of the key or null if it was removed
+     */
+
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null)
+            throw new NullPointerException();
+
+        RedBlackBinaryTree.Node<K> node = insert(key);
+        V previous = valueOf(node);
+        V merged = value;
+        if (previous != null) {
+            int expectedModCount = tree.modCount();
+            merged = remappingFunction.apply(previous, value);
+            if (tree.modCount() != expectedModCount)
+                throw new ConcurrentModificationException(); // the node may no longer hold the key
+        }
+
+        if (merged == null)
+            tree.delete(node);
+        else
+            node.value = merged;
+
+        return merged;
+    }
+
+
+    public Map.Entry<K, V> floorEntry(K key) {
+        return entryOf(tree.floorNode(key));
+    }
+
+
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return entryOf(tree.ceilingNode(key));
+    }
+
+
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return entryOf(tree.lowerNode(key));
+    }
+
+
+    public Map.Entry<K, V> higherEntry(K key) {
+        return entryOf(tree.higherNode(key));
+    }
+
+
+    public Map.Entry<K, V> firstEntry() {
+        return entryOf(tree.firstNode());
+    }
+
+
+    public Map.Entry<K, V> lastEntry() {
+        return entryOf(tree.lastNode());
+    }
+
+
+    public int size() {
+        return tree.size();
+    }
+
+
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+
+    public void clear() {
+        tree.clear();
+    }
+
+
+    /**
+     * Returns an iterator over the entries in ascending key order, walking the nextLargest links
+     */
+
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator();
+    }
+
+
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (RedBlackBinaryTree.Node<K> node = tree.firstNode(); node != null; node = tree.nextNode(node)) {
+            builder.append(node.data).append('=').append(node.value);
+            if (tree.nextNode(node) != null)
+                builder.append(", ");
+        }
+        return builder.append("}").toString();
+    }
+
+
+    private RedBlackBinaryTree.Node<K> insert(K key) {
+        if (key == null)
+            throw new NullPointerException();
+
+        return tree.insert(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueOf(RedBlackBinaryTree.Node<K> node) {
+        return node == null ? null : (V) node.value;
+    }
+
+    private Map.Entry<K, V> entryOf(RedBlackBinaryTree.Node<K> node) {
+        return node == null ? null : new AbstractMap.SimpleImmutableEntry<>(node.data, valueOf(node));
+    }
+
+
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private RedBlackBinaryTree.Node<K> next = tree.firstNode();
+        private final int expectedModCount = tree.modCount();
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (expectedModCount != tree.modCount())
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Map.Entry<K, V> entry = entryOf(next);
+            next = tree.nextNode(next);
+            return entry;
+        }
+    }
+}
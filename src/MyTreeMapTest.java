@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class MyTreeMapTest {
+
+    private final MyTreeMap<Integer, String> map = new MyTreeMap<>();
+
+
+    @BeforeEach
+    void setUp() {
+        for (int n = 10; n <= 50; n += 10)
+            assertNull(map.put(n, "v" + n));
+    }
+
+    @Test
+    void testGetAndPut() {
+        assertEquals("v30", map.get(30));
+        assertNull(map.get(35));
+        assertEquals("v30", map.put(30, "x"));
+        assertEquals("x", map.get(30));
+        assertEquals(5, map.size());
+        assertEquals("{10=v10, 20=v20, 30=x, 40=v40, 50=v50}", map.toString());
+    }
+
+    @Test
+    void testRemoveKeepsValuesOfOtherKeys() {
+        assertEquals("v20", map.remove(20)); // 20 is the root with two children
+        assertNull(map.remove(20));
+        assertEquals(4, map.size());
+        for (int n = 10; n <= 50; n += 10) {
+            if (n != 20)
+                assertEquals("v" + n, map.get(n));
+        }
+    }
+
+    @Test
+    void testNavigation() {
+        assertEquals(Map.entry(30, "v30"), map.floorEntry(35));
+        assertEquals(Map.entry(40, "v40"), map.ceilingEntry(35));
+        assertEquals(Map.entry(20, "v20"), map.lowerEntry(30));
+        assertEquals(Map.entry(40, "v40"), map.higherEntry(30));
+        assertEquals(Map.entry(50, "v50"), map.lowerEntry(100));
+        assertEquals(Map.entry(10, "v10"), map.higherEntry(0));
+        assertNull(map.floorEntry(5));
+        assertNull(map.ceilingEntry(55));
+        assertEquals(Map.entry(10, "v10"), map.firstEntry());
+        assertEquals(Map.entry(50, "v50"), map.lastEntry());
+    }
+
+    @Test
+    void testComputeIfAbsent() {
+        assertEquals("v10", map.computeIfAbsent(10, key -> "never"));
+        assertEquals("new", map.computeIfAbsent(15, key -> "new"));
+        assertNull(map.computeIfAbsent(25, key -> null));
+        assertFalse(map.containsKey(25));
+        assertEquals(6, map.size());
+    }
+
+    @Test
+    void testComputeIfAbsentWithThrowingFunction() {
+        assertThrows(IllegalStateException.class, () -> map.computeIfAbsent(25, key -> {
+            throw new IllegalStateException();
+        }));
+        assertFalse(map.containsKey(25));
+        assertNull(map.get(25));
+        assertEquals(5, map.size());
+
+        assertThrows(ConcurrentModificationException.class, () -> map.computeIfAbsent(25, key -> {
+            map.remove(10);
+            return "changed";
+        }));
+    }
+
+    @Test
+    void testMerge() {
+        MyTreeMap<String, Integer> counts = new MyTreeMap<>();
+        for (String word : "a b a c a b".split(" "))
+            counts.merge(word, 1, Integer::sum);
+        assertEquals("{a=3, b=2, c=1}", counts.toString());
+
+        assertNull(counts.merge("b", 1, (a, b) -> null));
+        assertFalse(counts.containsKey("b"));
+    }
+
+    @Test
+    void testMergeWithFunctionChangingTheMap() {
+        MyTreeMap<String, Integer> counts = new MyTreeMap<>();
+        counts.merge("a", 1, Integer::sum);
+        counts.merge("b", 1, Integer::sum);
+
+        assertThrows(ConcurrentModificationException.class, () -> counts.merge("b", 1, (a, b) -> {
+            counts.remove("a"); // deleting a may move b to another node
+            return a + b;
+        }));
+        assertFalse(counts.containsKey("a"));
+        assertEquals(1, counts.get("b"));
+    }
+
+    @Test
+    void testEntryIteration() {
+        Iterator<Map.Entry<Integer, String>> i = map.iterator();
+        for (int n = 10; n <= 50; n += 10)
+            assertEquals(Map.entry(n, "v" + n), i.next());
+        assertFalse(i.hasNext());
+
+        Iterator<Map.Entry<Integer, String>> modified = map.iterator();
+        map.put(60, "v60");
+        assertThrows(ConcurrentModificationException.class, modified::next);
+    }
+
+    @Test
+    void testRandomPutAndRemove() {
+        Random rnd = new Random();
+        TreeMap<Integer, Integer> oracle = new TreeMap<>();
+        MyTreeMap<Integer, Integer> tested = new MyTreeMap<>();
+        for (int n = 0; n < 5000; n++) {
+            int key = rnd.nextInt(200);
+            if (rnd.nextBoolean())
+                assertEquals(oracle.put(key, n), tested.put(key, n));
+            else
+                assertEquals(oracle.remove(key), tested.remove(key));
+        }
+        Iterator<Map.Entry<Integer, Integer>> i = tested.iterator();
+        for (Map.Entry<Integer, Integer> expected : oracle.entrySet())
+            assertEquals(expected, i.next());
+        assertFalse(i.hasNext());
+    }
+}
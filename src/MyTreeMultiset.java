@@ -0,0 +1,256 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Sorted multiset on the Red-Black Binary Tree. Every distinct element has one node holding the number of
+ * occurrences of it, so adding and removing duplicates only changes the count of a node and never the
+ * structure of the tree.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class MyTreeMultiset<T extends Comparable<? super T>> implements Iterable<T> {
+
+    private final RedBlackBinaryTree<T> tree = new RedBlackBinaryTree<>();
+
+    private long size = 0; // total number of occurrences
+    private int modCount = 0;
+
+
+
+
+    public boolean add(T t) {
+        return add(t, 1) >= 0;
+    }
+
+
+    /**
+     * Adds a number of occurrences of the element
+     *
+     * @return the number of occurrences before the call
+     */
+
+    public int add(T t, int occurrences) {
+        if (t == null)
+            throw new NullPointerException();
+        if (occurrences < 1)
+            throw new IllegalArgumentException("Occurrences must be positive: " + occurrences);
+
+        int originalSize = tree.size();
+        RedBlackBinaryTree.Node<T> node = tree.insert(t);
+
+        int previous = 0;
+        if (tree.size() > originalSize)
+            node.count = occurrences;
+        else {
+            previous = node.count;
+            node.count = Math.addExact(node.count, occurrences);
+        }
+
+        size += occurrences;
+        modCount++;
+        return previous;
+    }
+
+
+    public boolean remove(T t) {
+        return remove(t, 1) > 0;
+    }
+
+
+    /**
+     * Removes up to a number of occurrences of the element. The node of the element is only deleted when its
+     * last occurrence is removed.
+     *
+     * @return the number of occurrences before the call
+     */
+
+    public int remove(T t, int occurrences) {
+        if (occurrences < 1)
+            throw new IllegalArgumentException("Occurrences must be positive: " + occurrences);
+
+        RedBlackBinaryTree.Node<T> node = tree.getNode(t);
+        if (node == null)
+            return 0;
+
+        int previous = node.count;
+        if (occurrences < previous)
+            node.count -= occurrences;
+        else
+            tree.delete(node);
+
+        size -= Math.min(occurrences, previous);
+        modCount++;
+        return previous;
+    }
+
+
+    /**
+     * Returns the number of occurrences of the element
+     */
+
+    public int count(T t) {
+        RedBlackBinaryTree.Node<T> node = tree.getNode(t);
+        return node == null ? 0 : node.count;
+    }
+
+
+    public boolean contains(T t) {
+        return tree.contains(t);
+    }
+
+
+    /**
+     * Returns the total number of occurrences, or Integer.MAX_VALUE if there are more
+     */
+
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+
+    public long longSize() {
+        return size;
+    }
+
+
+    /**
+     * Returns the number of distinct elements, which is the number of nodes in the tree
+     */
+
+    public int distinctSize() {
+        return tree.size();
+    }
+
+
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+
+    public void clear() {
+        tree.clear();
+        size = 0;
+        modCount++;
+    }
+
+
+    public T first() {
+        return tree.isEmpty() ? null : tree.first();
+    }
+
+
+    public T last() {
+        return tree.isEmpty() ? null : tree.last();
+    }
+
+
+    public T lower(T t) {
+        return tree.lower(t);
+    }
+
+
+    public T higher(T t) {
+        return tree.higher(t);
+    }
+
+
+    /**
+     * Returns an iterator returning every element as many times as it occurs, in ascending order
+     */
+
+    public Iterator<T> iterator() {
+        return new OccurrenceIterator();
+    }
+
+
+    /**
+     * Returns an iterator returning every distinct element once, in ascending order. Removing through the
+     * iterator removes every occurrence of the element.
+     */
+
+    public Iterator<T> distinctIterator() {
+        return new DistinctIterator();
+    }
+
+
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (RedBlackBinaryTree.Node<T> node = tree.firstNode(); node != null; node = tree.nextNode(node)) {
+            builder.append(node.data);
+            if (node.count > 1)
+                builder.append(" x ").append(node.count);
+            if (tree.nextNode(node) != null)
+                builder.append(", ");
+        }
+        return builder.append("]").toString();
+    }
+
+
+    private class OccurrenceIterator implements Iterator<T> {
+
+        private RedBlackBinaryTree.Node<T> current = tree.firstNode();
+        private int returnedOfCurrent; // occurrences of the current node returned so far
+        private final int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        @Override
+        public T next() {
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            T data = current.data;
+            if (++returnedOfCurrent == current.count) {
+                current = tree.nextNode(current);
+                returnedOfCurrent = 0;
+            }
+            return data;
+        }
+    }
+
+
+    private class DistinctIterator implements Iterator<T> {
+
+        private final Iterator<T> nodes = tree.iterator();
+        private T lastReturned;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return nodes.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+
+            lastReturned = nodes.next();
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            if (lastReturned == null)
+                throw new IllegalStateException();
+
+            int occurrences = count(lastReturned);
+            nodes.remove(); // deletes the node through the tree iterator, which keeps its place in the tree
+
+            size -= occurrences;
+            expectedModCount = ++modCount;
+            lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class MyTreeMultisetTest {
+
+    private final MyTreeMultiset<Integer> multiset = new MyTreeMultiset<>();
+
+
+    @BeforeEach
+    void setUp() {
+        for (int n : new int[]{3, 1, 3, 2, 3, 1})
+            assertTrue(multiset.add(n));
+    }
+
+    @Test
+    void testCounts() {
+        assertEquals(6, multiset.size());
+        assertEquals(3, multiset.distinctSize());
+        assertEquals(2, multiset.count(1));
+        assertEquals(3, multiset.count(3));
+        assertEquals(0, multiset.count(4));
+        assertEquals("[1 x 2, 2, 3 x 3]", multiset.toString());
+    }
+
+    @Test
+    void testRemoveOccurrences() {
+        assertTrue(multiset.remove(3));
+        assertEquals(2, multiset.count(3));
+        assertEquals(2, multiset.remove(1, 5));
+        assertFalse(multiset.contains(1));
+        assertFalse(multiset.remove(1));
+        assertEquals(3, multiset.size());
+        assertEquals(2, multiset.distinctSize());
+        assertEquals(2, multiset.first());
+    }
+
+    @Test
+    void testIteration() {
+        List<Integer> elements = new ArrayList<>();
+        multiset.iterator().forEachRemaining(elements::add);
+        assertEquals(List.of(1, 1, 2, 3, 3, 3), elements);
+
+        elements.clear();
+        multiset.distinctIterator().forEachRemaining(elements::add);
+        assertEquals(List.of(1, 2, 3), elements);
+    }
+
+    @Test
+    void testRemoveThroughDistinctIterator() {
+        Iterator<Integer> occurrences = multiset.iterator();
+        occurrences.next();
+
+        Iterator<Integer> distinct = multiset.distinctIterator();
+        assertThrows(IllegalStateException.class, distinct::remove);
+        while (distinct.hasNext()) {
+            if (distinct.next() == 3)
+                distinct.remove(); // every occurrence of 3 goes with the node
+        }
+        assertEquals(3, multiset.size());
+        assertEquals(3, multiset.longSize());
+        assertEquals(2, multiset.distinctSize());
+        assertEquals("[1 x 2, 2]", multiset.toString());
+        assertThrows(ConcurrentModificationException.class, occurrences::next);
+    }
+
+    @Test
+    void testRandomAddAndRemove() {
+        Random rnd = new Random();
+        Map<Integer, Integer> oracle = new TreeMap<>();
+        MyTreeMultiset<Integer> tested = new MyTreeMultiset<>();
+        long size = 0;
+        for (int n = 0; n < 5000; n++) {
+            int data = rnd.nextInt(50);
+            int occurrences = 1 + rnd.nextInt(3);
+            int previous = oracle.getOrDefault(data, 0);
+            if (rnd.nextBoolean()) {
+                assertEquals(previous, tested.add(data, occurrences));
+                oracle.put(data, previous + occurrences);
+                size += occurrences;
+            } else {
+                assertEquals(previous, tested.remove(data, occurrences));
+                if (previous > occurrences)
+                    oracle.put(data, previous - occurrences);
+                else
+                    oracle.remove(data);
+                size -= Math.min(previous, occurrences);
+            }
+        }
+        assertEquals(size, tested.longSize());
+        assertEquals(oracle.size(), tested.distinctSize());
+        for (Map.Entry<Integer, Integer> entry : oracle.entrySet())
+            assertEquals(entry.getValue(), tested.count(entry.getKey()));
+    }
+}
@@ -1,4 +1,13 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 
 /**
@@ -10,7 +19,27 @@ import java.util.*;
 
 public class MyTreeSet<T extends Comparable<? super T>>{
 
-    private final RedBlackBinaryTree<T> tree = new RedBlackBinaryTree<>();;
+    private final RedBlackBinaryTree<T> tree;
+
+    private MutationJournal<T> journal; // null unless a journal has been opened for the set
+
+    private CountingBloomFilter<T> filter; // null unless a membership filter has been enabled
+    private final List<ChangeStream<T>> streams = new ArrayList<>(2);
+    private double filterFalsePositiveRate;
+
+
+    public MyTreeSet() {
+        this(BalancingPolicy.RED_BLACK);
+    }
+
+
+    /**
+     * Creates a set whose tree is balanced by the given policy, see BalancingPolicy
+     */
+
+    public MyTreeSet(BalancingPolicy policy) {
+        tree = new RedBlackBinaryTree<>(policy);
+    }
 
 
 
@@ -21,12 +50,12 @@ public class MyTreeSet<T extends Comparable<? super T>>{
 
 
     public T floor(T t) {
-        return null;
+        return tree.floor(t);
     }
 
 
     public T ceiling(T t) {
-        return null;
+        return tree.ceiling(t);
     }
 
 
@@ -35,15 +64,52 @@ public class MyTreeSet<T extends Comparable<? super T>>{
     }
 
 
+    /**
+     * Answers whether each of the probes is in the set in one pass, see RedBlackBinaryTree.containsAll
+     *
+     * @param probes  elements sorted in ascending order
+     * @param results array given whether probes[i] is in the set at index i
+     * @return the number of probes in the set
+     */
+
+    public int containsAll(T[] probes, boolean[] results) {
+        return tree.containsAll(probes, results);
+    }
+
+
+    /**
+     * Writes lower(probes[i]) to results[i] for every probe, sorted in ascending order, in one pass
+     */
+
+    public void lowerAll(T[] probes, T[] results) {
+        tree.lowerAll(probes, results);
+    }
+
+
+    /**
+     * Writes higher(probes[i]) to results[i] for every probe, sorted in ascending order, in one pass
+     */
+
+    public void higherAll(T[] probes, T[] results) {
+        tree.higherAll(probes, results);
+    }
+
+
     public T pollFirst() {
+        if (tree.isEmpty())
+            return null;
+
         T result = tree.first();
-        tree.remove(result);
+        remove(result);
         return result;
     }
 
     public T pollLast() {
+        if (tree.isEmpty())
+            return null;
+
         T result = tree.last();
-        tree.remove(result);
+        remove(result);
         return result;
     }
 
@@ -59,49 +125,453 @@ public class MyTreeSet<T extends Comparable<? super T>>{
 
 
     public boolean contains(Object o) {
-        return tree.contains((T)o);
+        T t = (T)o;
+        if (filter == null || t == null)
+            return tree.contains(t);
+
+        if (!filter.mightContain(t))
+            return false;
+
+        boolean found = tree.contains(t);
+        if (!found)
+            filter.falsePositive();
+        return found;
+    }
+
+
+    /**
+     * Puts a counting Bloom filter in front of contains, so that most lookups of missing elements are answered
+     * by a few hash probes instead of a search. The filter is kept up to date by every mutation and is rebuilt
+     * larger when the set outgrows it. The elements must have a hashCode consistent with compareTo.
+     *
+     * @param expectedElements  the number of elements to size the filter for
+     * @param falsePositiveRate the wanted rate of lookups of missing elements that still search the tree
+     */
+
+    public void enableMembershipFilter(int expectedElements, double falsePositiveRate) {
+        filterFalsePositiveRate = falsePositiveRate;
+        rebuildFilter(Math.max(expectedElements, tree.size()));
+    }
+
+
+    public void disableMembershipFilter() {
+        filter = null;
+    }
+
+
+    /**
+     * Returns the membership filter with its metrics, or null if none is enabled
+     */
+
+    public CountingBloomFilter<T> membershipFilter() {
+        return filter;
+    }
+
+
+    /**
+     * Turns finger search on or off, see RedBlackBinaryTree.setFingerSearch
+     */
+
+    public void setFingerSearch(boolean enabled) {
+        tree.setFingerSearch(enabled);
+    }
+
+
+    /**
+     * Bounds the rotations per access of a set created with BalancingPolicy.SPLAY, see
+     * RedBlackBinaryTree.setSplayLimit
+     */
+
+    public void setSplayLimit(int rotations) {
+        tree.setSplayLimit(rotations);
+    }
+
+
+    /**
+     * Sets the normalizer giving prefixes compared before the elements, see RedBlackBinaryTree.setKeyNormalizer
+     */
+
+    public void setKeyNormalizer(KeyNormalizer<? super T> normalizer) {
+        tree.setKeyNormalizer(normalizer);
+    }
+
+
+    /**
+     * Starts a stream delivering every change made to the set from now on to the listener, in batches on a
+     * thread of its own, see ChangeStream. Removals through iterators, cursors, pollFirst, pollLast and
+     * removeRange are delivered as removals of each element, and reading a snapshot as a clear followed by
+     * the added elements.
+     *
+     * @param batchSize the greatest number of changes in one call to the listener
+     * @param capacity  the number of changes that may wait for delivery before the writer has to wait
+     */
+
+    public ChangeStream<T> subscribe(ChangeListener<T> listener, int batchSize, int capacity) {
+        ChangeStream<T> stream = new ChangeStream<>(this, listener, batchSize, capacity);
+        streams.add(stream);
+        return stream;
+    }
+
+
+    public ChangeStream<T> subscribe(ChangeListener<T> listener) {
+        return subscribe(listener, 256, 4096);
+    }
+
+
+    /**
+     * Stops publishing changes to the stream. Called by ChangeStream.close.
+     */
+
+    void unsubscribe(ChangeStream<T> stream) {
+        streams.remove(stream);
+    }
+
+
+    /**
+     * Returns a cursor on no element, to be moved by seeking, see Cursor
+     */
+
+    public Cursor<T> cursor() {
+        return new Cursor<>(tree, this::removed);
+    }
+
+
+    /**
+     * Returns an immutable copy of the set laid out in arrays for fast searches, see FrozenTreeSet. The set
+     * itself is left as it is, and its nodes are released when it is no longer referenced.
+     */
+
+    public FrozenTreeSet<T> freeze() {
+        return new FrozenTreeSet<>(toArray(new Comparable<?>[tree.size()]));
     }
 
 
     public Iterator<T> iterator() {
-        return tree.iterator();
+        return isTracked() ? new TrackingIterator(tree.iterator()) : tree.iterator();
     }
 
 
     public Object[] toArray() {
-        Iterator<T> i = tree.iterator();
         Object[] arr = new Object[tree.size()];
-        int j = 0;
-        while (i.hasNext()) {
-            arr[j] = i;
-            j++;
-        }
+        tree.copyTo(arr, 0);
         return arr;
     }
 
 
+    /**
+     * Returns the elements in ascending order in the given array if they fit, otherwise in a new array of the
+     * same type. Like in java.util.Collection the element after the last one is set to null if there is room.
+     */
+
+    @SuppressWarnings("unchecked")
+    public <E> E[] toArray(E[] a) {
+        int size = tree.size();
+        E[] arr = a.length >= size ? a : (E[]) Array.newInstance(a.getClass().getComponentType(), size);
+
+        tree.copyTo(arr, 0);
+        if (arr.length > size)
+            arr[size] = null;
+        return arr;
+    }
+
+
+    public <E> E[] toArray(IntFunction<E[]> generator) {
+        return toArray(generator.apply(tree.size()));
+    }
+
+
+    /**
+     * Copies integral elements in ascending order into a long array, for example a column of a batch.
+     *
+     * @param dst the array to copy to
+     * @param off the index in the array of the first element
+     * @return the number of elements copied
+     * @throws ClassCastException if the elements are not numbers
+     */
+
+    public int copyTo(long[] dst, int off) {
+        tree.copyTo(dst, off);
+        return tree.size();
+    }
+
+
 
     public boolean add(T t) {
-        return tree.add(t);
+        boolean added = tree.add(t);
+        if (added && journal != null)
+            journal.log(MutationJournal.Mutation.ADD, t);
+        if (added && !streams.isEmpty())
+            publish(ChangeEvent.Kind.ADDED, t);
+
+        if (added && filter != null) {
+            filter.add(t);
+            if (tree.size() > 2 * filter.capacity())
+                rebuildFilter(2 * tree.size());
+        }
+        return added;
     }
 
 
 
 
     public boolean remove(Object o) {
-        return tree.remove((T)o);
+        T t = (T)o;
+        boolean removed = tree.remove(t);
+        if (removed)
+            removed(t);
+
+        return removed;
+    }
+
+
+
+    /**
+     * Removes every element greater than or equal to from and less than to, see RedBlackBinaryTree.removeRange.
+     * A null bound leaves that side of the range open, so removeRange(null, x) works like headSet(x).clear().
+     *
+     * @return the number of elements removed
+     */
+
+    public int removeRange(T from, T to) {
+        if (filter != null || !streams.isEmpty())
+            removingRange(from, to);
+
+        int removed = tree.removeRange(from, to);
+        if (removed > 0 && journal != null)
+            journal.logRange(from, to);
+
+        return removed;
+    }
+
+
+
+    /**
+     * Removes every element matching the predicate, evaluating it in parallel on the common pool, see
+     * removeIf(Predicate, ForkJoinPool)
+     */
+
+    public boolean removeIf(Predicate<? super T> predicate) {
+        return removeIf(predicate, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Removes every element matching the predicate. The predicate is evaluated in parallel for the subtrees of
+     * the tree, see RedBlackBinaryTree.parallelFilter, and must be safe to call from several threads. The
+     * matches are then removed in one pass, one at a time when there are few of them, or by building the tree
+     * again from the remaining elements when deleting k matches, O(k log n), would cost more than building
+     * the tree, O(n). If the predicate throws the set is left unchanged.
+     *
+     * @param predicate the predicate selecting the elements to remove
+     * @param pool      the pool evaluating the predicate
+     * @return true if any element was removed
+     */
+
+    public boolean removeIf(Predicate<? super T> predicate, ForkJoinPool pool) {
+        List<T> matches = tree.parallelFilter(predicate, pool);
+        if (matches.isEmpty())
+            return false;
+
+        int size = tree.size();
+        if ((long) matches.size() * (32 - Integer.numberOfLeadingZeros(size)) > size)
+            rebuildWithout(matches);
+        else
+            for (T t : matches)
+                tree.remove(t);
+
+        for (T t : matches)
+            removed(t);
+        return true;
+    }
+
+
+    /**
+     * Calls the action for every element in parallel on the common pool, in no particular order. The action
+     * must be safe to call from several threads and must not change the set.
+     */
+
+    public void parallelForEach(Consumer<? super T> action) {
+        parallelForEach(action, ForkJoinPool.commonPool());
+    }
+
+
+    public void parallelForEach(Consumer<? super T> action, ForkJoinPool pool) {
+        tree.parallelForEach(action, pool);
     }
 
 
 
     public void clear() {
         tree.clear();
+        if (journal != null)
+            journal.log(MutationJournal.Mutation.CLEAR, null);
+        if (filter != null)
+            filter.clear();
+        if (!streams.isEmpty())
+            publish(ChangeEvent.Kind.CLEARED, null);
     }
 
 
 
     public Iterator<T> descendingIterator() {
-        return tree.descendingIterator();
+        return isTracked() ? new TrackingIterator(tree.descendingIterator()) : tree.descendingIterator();
+    }
+
+
+    /**
+     * Writes the elements of the set to the channel as a snapshot, see SnapshotFormat
+     *
+     * @param channel the channel to write to
+     * @param codec   the codec encoding the elements, for example SnapshotCodec.LONG
+     */
+
+    public void writeSnapshot(WritableByteChannel channel, SnapshotCodec<T> codec) throws IOException {
+        SnapshotFormat.write(tree, codec, channel);
+    }
+
+    /**
+     * Replaces the elements of the set with the ones in a snapshot. The tree is built in linear time
+     * directly from the sorted elements. If the snapshot is damaged the set is left empty, which is logged to
+     * the journal as a clear.
+     *
+     * @param channel the channel to read from
+     * @param codec   the codec the snapshot was written with
+     */
+
+    public void readSnapshot(ReadableByteChannel channel, SnapshotCodec<T> codec) throws IOException {
+        try {
+            SnapshotFormat.read(tree, codec, channel);
+        } catch (IOException e) {
+            // the set is left empty unless the header was rejected before it changed, and replaying the journal
+            // must give the same set
+            if (journal != null && tree.isEmpty()) {
+                try {
+                    journal.log(MutationJournal.Mutation.CLEAR, null);
+                } catch (UncheckedIOException journalFailure) {
+                    e.addSuppressed(journalFailure);
+                }
+            }
+            throw e;
+        } finally {
+            // a damaged snapshot leaves the set empty, or unchanged if its header was rejected, so the filter
+            // and the streams start over from whatever the set holds either way
+            if (filter != null)
+                rebuildFilter(Math.max(filter.capacity(), tree.size()));
+
+            if (!streams.isEmpty()) {
+                publish(ChangeEvent.Kind.CLEARED, null);
+                for (RedBlackBinaryTree.Node<T> node = tree.firstNode(); node != null; node = tree.nextNode(node))
+                    publish(ChangeEvent.Kind.ADDED, node.data);
+            }
+        }
+
+        // the loaded elements can not be expressed as journal records, so the journal starts over from them
+        if (journal != null)
+            journal.compact();
+    }
+
+    /**
+     * Logs an element removed through the set, an iterator or a cursor to the journal, the filter and the
+     * change streams
+     */
+
+    private void removed(T t) {
+        if (journal != null)
+            journal.log(MutationJournal.Mutation.REMOVE, t);
+        if (filter != null)
+            filter.remove(t);
+        if (!streams.isEmpty())
+            publish(ChangeEvent.Kind.REMOVED, t);
+    }
+
+    /**
+     * Builds the tree again from the elements not among the matches, which are in ascending order
+     */
+
+    private void rebuildWithout(List<T> matches) {
+        List<T> remaining = new ArrayList<>(tree.size() - matches.size());
+        Iterator<T> removed = matches.iterator();
+        T next = removed.next();
+        for (RedBlackBinaryTree.Node<T> node = tree.firstNode(); node != null; node = tree.nextNode(node)) {
+            if (node.data == next) // the matches are the very objects held by the nodes
+                next = removed.hasNext() ? removed.next() : null;
+            else
+                remaining.add(node.data);
+        }
+        tree.buildFromSorted(remaining.iterator(), remaining.size());
+    }
+
+    private boolean isTracked() {
+        return journal != null || filter != null || !streams.isEmpty();
+    }
+
+    /**
+     * Removes the elements of a range from the filter and publishes their removal before the range is removed
+     * from the tree. This costs time linear in the size of the range, which is only paid with a filter or a
+     * change stream.
+     */
+
+    private void removingRange(T from, T to) {
+        RedBlackBinaryTree.Node<T> node = from == null ? tree.firstNode() : tree.ceilingNode(from);
+        for (; node != null && (to == null || node.data.compareTo(to) < 0); node = tree.nextNode(node)) {
+            if (filter != null)
+                filter.remove(node.data);
+            if (!streams.isEmpty())
+                publish(ChangeEvent.Kind.REMOVED, node.data);
+        }
+    }
+
+    private void publish(ChangeEvent.Kind kind, T t) {
+        // backwards, since a stream closed by its listener unsubscribes itself when it is published to
+        for (int i = streams.size() - 1; i >= 0; i--)
+            streams.get(i).publish(kind, t);
+    }
+
+    /**
+     * Replaces the filter with a new one of the given capacity holding every element
+     */
+
+    private void rebuildFilter(int capacity) {
+        CountingBloomFilter<T> rebuilt = new CountingBloomFilter<>(Math.max(capacity, 1), filterFalsePositiveRate);
+        for (RedBlackBinaryTree.Node<T> node = tree.firstNode(); node != null; node = tree.nextNode(node))
+            rebuilt.add(node.data);
+
+        filter = rebuilt;
+    }
+
+    /**
+     * Attaches the journal every mutation is logged to, or detaches it if null. Called by MutationJournal.
+     */
+
+    void attachJournal(MutationJournal<T> journal) {
+        this.journal = journal;
+    }
+
+
+    /**
+     * Returns an iterator over the union of the sets in ascending order without building the union. Every
+     * element is returned once even if it is in several of the sets.
+     */
+
+    public static <T extends Comparable<? super T>> MergedIterator<T> mergedIterator(Collection<MyTreeSet<T>> sets) {
+        return new MergedIterator<>(trees(sets), false);
+    }
+
+    /**
+     * Same as mergedIterator but in descending order
+     */
+
+    public static <T extends Comparable<? super T>> MergedIterator<T> mergedDescendingIterator(
+            Collection<MyTreeSet<T>> sets) {
+        return new MergedIterator<>(trees(sets), true);
+    }
+
+    private static <T extends Comparable<? super T>> List<RedBlackBinaryTree<T>> trees(Collection<MyTreeSet<T>> sets) {
+        List<RedBlackBinaryTree<T>> trees = new ArrayList<>(sets.size());
+        for (MyTreeSet<T> set : sets)
+            trees.add(set.tree);
+
+        return trees;
     }
 
 
@@ -113,4 +583,35 @@ public class MyTreeSet<T extends Comparable<? super T>>{
     public T last() {
         return tree.last();
     }
+
+
+    /**
+     * Iterator logging the elements it removes to the journal and the filter
+     */
+    private class TrackingIterator implements Iterator<T> {
+
+        private final Iterator<T> iterator;
+        private T lastReturned;
+
+        TrackingIterator(Iterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            lastReturned = iterator.next();
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+            removed(lastReturned);
+        }
+    }
 }
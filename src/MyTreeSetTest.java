@@ -0,0 +1,557 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class MyTreeSetTest {
+
+    private final MyTreeSet<Long> set = new MyTreeSet<>();
+
+
+    @BeforeEach
+    void setUp() {
+        for (long n = -3; n <= 3; n++)
+            assertTrue(set.add(n * 1000));
+    }
+
+    byte[] writeSnapshot(MyTreeSet<Long> set) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeSnapshot(Channels.newChannel(bytes), SnapshotCodec.LONG);
+        return bytes.toByteArray();
+    }
+
+    void assertSameElements(SortedSet<Long> expected, MyTreeSet<Long> actual) {
+        assertEquals(expected.size(), actual.size());
+        Iterator<Long> i = actual.iterator();
+        for (Long data : expected)
+            assertEquals(data, i.next());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    void testSnapshotRoundTrip() throws IOException {
+        MyTreeSet<Long> loaded = new MyTreeSet<>();
+        loaded.readSnapshot(Channels.newChannel(new ByteArrayInputStream(writeSnapshot(set))), SnapshotCodec.LONG);
+
+        assertSameElements(new TreeSet<>(List.of(-3000L, -2000L, -1000L, 0L, 1000L, 2000L, 3000L)), loaded);
+        assertEquals(-3000L, loaded.first());
+        assertEquals(3000L, loaded.last());
+        assertEquals(1000L, loaded.higher(0L));
+    }
+
+    @Test
+    void testSnapshotOfManyBlocks() throws IOException {
+        SortedSet<Long> oracle = new TreeSet<>();
+        Random rnd = new Random();
+        set.clear();
+        for (int n = 0; n < 100000; n++) {
+            long data = rnd.nextLong();
+            assertEquals(oracle.add(data), set.add(data));
+        }
+        MyTreeSet<Long> loaded = new MyTreeSet<>();
+        loaded.readSnapshot(Channels.newChannel(new ByteArrayInputStream(writeSnapshot(set))), SnapshotCodec.LONG);
+
+        assertSameElements(oracle, loaded);
+        assertTrue(loaded.add(oracle.first() - 1));
+        assertTrue(loaded.remove(oracle.last()));
+    }
+
+    @Test
+    void testEmptySnapshot() throws IOException {
+        set.clear();
+        MyTreeSet<Long> loaded = new MyTreeSet<>();
+        loaded.add(1L);
+        loaded.readSnapshot(Channels.newChannel(new ByteArrayInputStream(writeSnapshot(set))), SnapshotCodec.LONG);
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test
+    void testDamagedSnapshot() throws IOException {
+        byte[] snapshot = writeSnapshot(set);
+        snapshot[snapshot.length - 17] ^= 1; // the last byte of the only block, before its checksum and the end block
+
+        MyTreeSet<Long> loaded = new MyTreeSet<>();
+        assertThrows(IOException.class, () -> loaded.readSnapshot(
+                Channels.newChannel(new ByteArrayInputStream(snapshot)), SnapshotCodec.LONG));
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test
+    void testDamagedBlockLength() throws IOException {
+        // the length of the first block follows the snapshot header and the element count of the block
+        for (int high : new int[] {0x7F, 0x40, 0x01}) {
+            byte[] snapshot = writeSnapshot(set);
+            snapshot[16] = (byte) high;
+
+            MyTreeSet<Long> loaded = new MyTreeSet<>();
+            loaded.add(1L);
+            assertThrows(IOException.class, () -> loaded.readSnapshot(
+                    Channels.newChannel(new ByteArrayInputStream(snapshot)), SnapshotCodec.LONG));
+            assertTrue(loaded.isEmpty());
+        }
+    }
+
+    @Test
+    void testStringSnapshot() throws IOException {
+        MyTreeSet<String> strings = new MyTreeSet<>();
+        for (String s : List.of("/usr/bin", "/usr/lib", "/usr/lib64", "/var", "\uD83D\uDE00a", "\uD83D\uDE01"))
+            strings.add(s);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        strings.writeSnapshot(Channels.newChannel(bytes), SnapshotCodec.STRING);
+        MyTreeSet<String> loaded = new MyTreeSet<>();
+        loaded.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())),
+                SnapshotCodec.STRING);
+
+        Iterator<String> i = loaded.iterator();
+        Iterator<String> expected = strings.iterator();
+        while (expected.hasNext())
+            assertEquals(expected.next(), i.next());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    void testJournalReplay(@TempDir Path directory) throws IOException {
+        MyTreeSet<Long> journaled = new MyTreeSet<>();
+        try (MutationJournal<Long> journal = MutationJournal.open(directory, journaled, SnapshotCodec.LONG, 10)) {
+            for (long n = 0; n < 100; n++)
+                journaled.add(n);
+            journaled.remove(50L);
+            assertEquals(0L, journaled.pollFirst());
+            assertEquals(10, journaled.removeRange(90L, null));
+
+            Iterator<Long> i = journaled.iterator();
+            assertEquals(1L, i.next());
+            i.remove();
+            journal.sync();
+        }
+
+        MyTreeSet<Long> recovered = new MyTreeSet<>();
+        MutationJournal.open(directory, recovered, SnapshotCodec.LONG, 10).close();
+        assertEquals(87, recovered.size());
+        assertEquals(2L, recovered.first());
+        assertEquals(89L, recovered.last());
+        assertFalse(recovered.contains(50L));
+    }
+
+    @Test
+    void testJournalWithTornRecord(@TempDir Path directory) throws IOException {
+        MyTreeSet<Long> journaled = new MyTreeSet<>();
+        try (MutationJournal<Long> journal = MutationJournal.open(directory, journaled, SnapshotCodec.LONG, 10)) {
+            journaled.add(1L);
+            journaled.add(2L);
+            journal.sync();
+        }
+        Path file = directory.resolve(MutationJournal.JOURNAL_FILE);
+        long size = Files.size(file);
+        Files.write(file, new byte[]{0, 0, 0, 9, 0, 4}, StandardOpenOption.APPEND); // half a record
+
+        MyTreeSet<Long> recovered = new MyTreeSet<>();
+        try (MutationJournal<Long> journal = MutationJournal.open(directory, recovered, SnapshotCodec.LONG, 10)) {
+            assertEquals(2, recovered.size());
+            assertEquals(size, Files.size(file));
+            recovered.add(3L);
+            journal.sync();
+        }
+
+        MyTreeSet<Long> again = new MyTreeSet<>();
+        MutationJournal.open(directory, again, SnapshotCodec.LONG, 10).close();
+        assertEquals(3, again.size());
+    }
+
+    @Test
+    void testJournalAfterDamagedSnapshot(@TempDir Path directory) throws IOException {
+        byte[] snapshot = writeSnapshot(set);
+        snapshot[snapshot.length - 17] ^= 1;
+
+        MyTreeSet<Long> journaled = new MyTreeSet<>();
+        try (MutationJournal<Long> journal = MutationJournal.open(directory, journaled, SnapshotCodec.LONG, 10)) {
+            journaled.add(1L);
+            assertThrows(IOException.class, () -> journaled.readSnapshot(
+                    Channels.newChannel(new ByteArrayInputStream(snapshot)), SnapshotCodec.LONG));
+            assertTrue(journaled.isEmpty());
+            journal.sync();
+        }
+
+        MyTreeSet<Long> recovered = new MyTreeSet<>();
+        MutationJournal.open(directory, recovered, SnapshotCodec.LONG, 10).close();
+        assertTrue(recovered.isEmpty()); // like the set when the journal was closed
+    }
+
+    @Test
+    void testJournalCompaction(@TempDir Path directory) throws IOException {
+        MyTreeSet<Long> journaled = new MyTreeSet<>();
+        try (MutationJournal<Long> journal = MutationJournal.open(directory, journaled, SnapshotCodec.LONG, 10)) {
+            for (long n = 0; n < 1000; n++)
+                journaled.add(n);
+            journal.compact();
+            assertEquals(0, Files.size(directory.resolve(MutationJournal.JOURNAL_FILE)));
+            journaled.remove(0L);
+        }
+
+        MyTreeSet<Long> recovered = new MyTreeSet<>();
+        MutationJournal.open(directory, recovered, SnapshotCodec.LONG, 10).close();
+        assertEquals(999, recovered.size());
+        assertEquals(1L, recovered.first());
+        assertEquals(999L, recovered.last());
+    }
+
+    @Test
+    void testToArray() {
+        assertArrayEquals(new Object[]{-3000L, -2000L, -1000L, 0L, 1000L, 2000L, 3000L}, set.toArray());
+        assertEquals(0, new MyTreeSet<Long>().toArray().length);
+    }
+
+    @Test
+    void testToTypedArray() {
+        Long[] small = set.toArray(new Long[0]);
+        assertArrayEquals(new Long[]{-3000L, -2000L, -1000L, 0L, 1000L, 2000L, 3000L}, small);
+
+        Long[] large = new Long[9];
+        Arrays.fill(large, 1L);
+        assertSame(large, set.toArray(large));
+        assertEquals(3000L, large[6]);
+        assertNull(large[7]);
+
+        assertArrayEquals(small, set.toArray(Long[]::new));
+    }
+
+    @Test
+    void testCopyToLongArray() {
+        long[] column = new long[10];
+        assertEquals(7, set.copyTo(column, 2));
+        assertArrayEquals(new long[]{0, 0, -3000, -2000, -1000, 0, 1000, 2000, 3000, 0}, column);
+        assertThrows(IndexOutOfBoundsException.class, () -> set.copyTo(column, 4));
+    }
+
+    @Test
+    void testFloorAndCeiling() {
+        assertEquals(1000L, set.floor(1999L));
+        assertEquals(2000L, set.floor(2000L));
+        assertEquals(2000L, set.ceiling(1001L));
+        assertNull(set.floor(-3001L));
+        assertNull(set.ceiling(3001L));
+    }
+
+    @Test
+    void testMergedIterator() {
+        MyTreeSet<Long> other = new MyTreeSet<>();
+        for (long n = -2500; n <= 4000; n += 500)
+            other.add(n);
+        MyTreeSet<Long> empty = new MyTreeSet<>();
+
+        SortedSet<Long> oracle = new TreeSet<>();
+        for (MyTreeSet<Long> s : List.of(set, other))
+            s.iterator().forEachRemaining(oracle::add);
+
+        MergedIterator<Long> i = MyTreeSet.mergedIterator(List.of(set, other, empty));
+        for (Long expected : oracle)
+            assertEquals(expected, i.next());
+        assertFalse(i.hasNext());
+        assertThrows(NoSuchElementException.class, i::next);
+
+        i = MyTreeSet.mergedDescendingIterator(List.of(set, other, empty));
+        for (Long expected : ((TreeSet<Long>) oracle).descendingSet())
+            assertEquals(expected, i.next());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    void testSeekMergedIterator() {
+        MyTreeSet<Long> other = new MyTreeSet<>();
+        other.add(1500L);
+        other.add(5000L);
+
+        MergedIterator<Long> i = MyTreeSet.mergedIterator(List.of(set, other));
+        i.seek(1001L);
+        assertEquals(1500L, i.next());
+        assertEquals(2000L, i.next());
+        i.seek(-5000L);
+        assertEquals(-3000L, i.next());
+
+        MergedIterator<Long> descending = MyTreeSet.mergedDescendingIterator(List.of(set, other));
+        descending.seek(1999L);
+        assertEquals(1500L, descending.next());
+        assertEquals(1000L, descending.next());
+    }
+
+    @Test
+    void testCursor() {
+        Cursor<Long> cursor = set.cursor();
+        assertFalse(cursor.isValid());
+
+        assertTrue(cursor.seek(-1500L));
+        assertEquals(-1000L, cursor.get());
+        assertTrue(cursor.next());
+        assertEquals(0L, cursor.get());
+        assertTrue(cursor.prev());
+        assertTrue(cursor.prev());
+        assertEquals(-2000L, cursor.get());
+
+        assertTrue(cursor.seekFloor(2500L));
+        assertEquals(2000L, cursor.get());
+        assertTrue(cursor.next());
+        assertFalse(cursor.next());
+        assertFalse(cursor.isValid());
+        assertThrows(NoSuchElementException.class, cursor::get);
+
+        assertFalse(cursor.seek(3001L));
+        assertTrue(cursor.seekLast());
+        assertEquals(3000L, cursor.get());
+        cursor.reset();
+        assertTrue(cursor.seekFirst());
+        assertEquals(-3000L, cursor.get());
+    }
+
+    @Test
+    void testRemoveOnCursor() {
+        Cursor<Long> cursor = set.cursor();
+        assertTrue(cursor.seek(0L)); // 0 has two children in the tree
+        assertTrue(cursor.remove());
+        assertEquals(1000L, cursor.get());
+        assertFalse(set.contains(0L));
+
+        assertTrue(cursor.seekLast());
+        assertFalse(cursor.remove());
+        assertEquals(5, set.size());
+        assertEquals(2000L, set.last());
+    }
+
+    @Test
+    void testCursorAfterModification() {
+        Cursor<Long> cursor = set.cursor();
+        assertTrue(cursor.seekFirst());
+        set.add(5L);
+        assertThrows(ConcurrentModificationException.class, cursor::next);
+        assertTrue(cursor.seek(5L));
+        assertEquals(5L, cursor.get());
+    }
+
+    @Test
+    void testMembershipFilter() {
+        set.enableMembershipFilter(16, 0.01);
+        assertTrue(set.contains(1000L));
+        assertFalse(set.contains(1500L));
+        assertTrue(set.remove(1000L));
+        assertFalse(set.contains(1000L));
+
+        CountingBloomFilter<Long> filter = set.membershipFilter();
+        assertEquals(3, filter.lookups());
+        assertEquals(filter.lookups() - 1, filter.rejected() + filter.falsePositives());
+
+        for (long n = 0; n < 10000; n++)
+            set.add(n * 7);
+        assertTrue(set.membershipFilter().capacity() >= set.size()); // rebuilt when outgrown
+
+        long misses = 0;
+        for (long n = 0; n < 10000; n++)
+            if (!set.contains(n * 7 + 1))
+                misses++;
+        assertEquals(10000, misses);
+        assertTrue(set.membershipFilter().rejected() > 9000);
+    }
+
+    @Test
+    void testRandomMembershipFilter() {
+        Random rnd = new Random();
+        TreeSet<Long> oracle = new TreeSet<>(List.of(-3000L, -2000L, -1000L, 0L, 1000L, 2000L, 3000L));
+        set.enableMembershipFilter(64, 0.05);
+
+        for (int n = 0; n < 5000; n++) {
+            long element = rnd.nextInt(2000);
+            switch (rnd.nextInt(5)) {
+                case 0, 1 -> assertEquals(oracle.add(element), set.add(element));
+                case 2 -> assertEquals(oracle.remove(element), set.remove(element));
+                case 3 -> {
+                    Cursor<Long> cursor = set.cursor();
+                    if (cursor.seek(element)) {
+                        oracle.remove(cursor.get());
+                        cursor.remove();
+                    }
+                }
+                default -> {
+                    long to = element + rnd.nextInt(20);
+                    SortedSet<Long> range = oracle.subSet(element, to);
+                    assertEquals(range.size(), set.removeRange(element, to));
+                    range.clear();
+                }
+            }
+            long probe = rnd.nextInt(2000);
+            assertEquals(oracle.contains(probe), set.contains(probe));
+        }
+        for (long probe = -3000; probe < 3000; probe++)
+            assertEquals(oracle.contains(probe), set.contains(probe));
+    }
+
+    @Test
+    void testChangeStream() throws InterruptedException {
+        List<String> changes = Collections.synchronizedList(new ArrayList<>());
+        ChangeStream<Long> stream = set.subscribe(batch -> batch.forEach(change -> changes.add(change.toString())));
+
+        set.add(5L);
+        set.add(5L);
+        set.remove(-3000L);
+        set.pollFirst();
+        set.pollLast();
+        Iterator<Long> i = set.iterator();
+        i.next();
+        i.remove();
+        set.removeRange(1000L, null);
+        set.clear();
+
+        stream.flush();
+        assertEquals(List.of("Added(5)", "Removed(-3000)", "Removed(-2000)", "Removed(3000)", "Removed(-1000)",
+                "Removed(1000)", "Removed(2000)", "Cleared"), changes);
+
+        stream.close();
+        set.add(7L);
+        assertEquals(8, changes.size());
+    }
+
+    @Test
+    void testChangeStreamClosedByListener() throws InterruptedException {
+        List<ChangeEvent<Long>> changes = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<ChangeStream<Long>> self = new AtomicReference<>();
+        CountDownLatch closed = new CountDownLatch(1);
+        self.set(set.subscribe(batch -> {
+            changes.addAll(batch);
+            self.get().close(); // would join its own thread
+            closed.countDown();
+        }, 1, 2));
+
+        set.add(5L);
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        for (long n = 6; n < 100; n++)
+            set.add(n); // never blocks although the stream delivers nothing more
+        self.get().flush();
+        self.get().close();
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    void testChangeStreamClosedByListenerEndsWithoutWrites() throws InterruptedException {
+        AtomicReference<ChangeStream<Long>> self = new AtomicReference<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        self.set(set.subscribe(batch -> {
+            try {
+                subscribed.await(); // the stream is set before it is used
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            self.get().close();
+        }, 1, 1));
+        subscribed.countDown();
+        set.add(5L);
+
+        // no change is made after the close, still the delivery thread ends
+        Thread delivery = self.get().deliveryThread();
+        delivery.join(10000);
+        assertFalse(delivery.isAlive());
+    }
+
+    @Test
+    void testChangeStreamAfterDamagedSnapshot() throws IOException, InterruptedException {
+        byte[] snapshot = writeSnapshot(set);
+        snapshot[snapshot.length - 17] ^= 1;
+
+        List<String> changes = Collections.synchronizedList(new ArrayList<>());
+        ChangeStream<Long> stream = set.subscribe(batch -> batch.forEach(change -> changes.add(change.toString())));
+        assertThrows(IOException.class, () -> set.readSnapshot(
+                Channels.newChannel(new ByteArrayInputStream(snapshot)), SnapshotCodec.LONG));
+        assertTrue(set.isEmpty());
+
+        stream.flush();
+        assertEquals(List.of("Cleared"), changes); // the subscribers see the set emptied too
+        stream.close();
+    }
+
+    @Test
+    void testChangeStreamKeepsReplicaInSync() throws InterruptedException {
+        TreeSet<Long> replica = new TreeSet<>(List.of(set.toArray(new Long[0])));
+        List<Integer> batchSizes = new ArrayList<>();
+        ChangeStream<Long> stream = set.subscribe(batch -> {
+            batchSizes.add(batch.size());
+            for (ChangeEvent<Long> change : batch) {
+                switch (change.kind()) {
+                    case ADDED -> replica.add(change.key());
+                    case REMOVED -> replica.remove(change.key());
+                    case CLEARED -> replica.clear();
+                }
+            }
+        }, 16, 8); // the writer has to wait for the listener most of the time
+
+        Random rnd = new Random();
+        for (int n = 0; n < 20000; n++) {
+            long element = rnd.nextInt(1000);
+            if (rnd.nextBoolean())
+                set.add(element);
+            else
+                set.remove(element);
+        }
+        stream.close();
+
+        assertEquals(Arrays.asList(set.toArray()), new ArrayList<>(replica));
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 16));
+    }
+
+    @Test
+    void testFailingChangeListener() throws InterruptedException {
+        ChangeStream<Long> stream = set.subscribe(batch -> {
+            throw new IllegalArgumentException("replica gone");
+        }, 4, 2);
+
+        for (long n = 0; n < 100; n++)
+            set.add(n); // never blocks for good although nothing is delivered
+        assertThrows(IllegalStateException.class, stream::flush);
+        assertThrows(IllegalStateException.class, stream::close);
+    }
+
+    @Test
+    void testRemoveIf() {
+        MyTreeSet<Long> set = new MyTreeSet<>();
+        TreeSet<Long> oracle = new TreeSet<>();
+        Random rnd = new Random();
+        for (int n = 0; n < 50_000; n++) {
+            long data = rnd.nextInt(1_000_000);
+            assertEquals(oracle.add(data), set.add(data));
+        }
+        set.enableMembershipFilter(100_000, 0.01);
+
+        // few matches are deleted one at a time, most matches rebuild the tree
+        assertTrue(set.removeIf(data -> data % 101 == 0));
+        oracle.removeIf(data -> data % 101 == 0);
+        assertSameElements(oracle, set);
+
+        assertTrue(set.removeIf(data -> data % 5 != 0));
+        oracle.removeIf(data -> data % 5 != 0);
+        assertSameElements(oracle, set);
+        assertFalse(set.contains(oracle.first() + 1));
+
+        assertFalse(set.removeIf(data -> data % 5 != 0));
+        assertThrows(ArithmeticException.class, () -> set.removeIf(data -> {
+            throw new ArithmeticException();
+        }));
+        assertSameElements(oracle, set);
+
+        LongAdder sum = new LongAdder();
+        set.parallelForEach(sum::add);
+        assertEquals(oracle.stream().mapToLong(Long::longValue).sum(), sum.sum());
+    }
+}
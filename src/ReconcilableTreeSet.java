@@ -0,0 +1,441 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Sorted set that two replicas can bring to their union by exchanging data in proportion to their differences
+ * instead of their size, with range based set reconciliation.
+ * <p>
+ * Every node of the tree keeps the fingerprint of its subtree, the number of elements and the sum of their
+ * 128-bit hashes, kept up to date through rotations and fix-ups by the augmentation of an AggregatedTreeSet. Since a
+ * sum does not depend on how the elements are grouped, the fingerprint of a range is the same on two replicas
+ * holding the same elements in differently shaped trees, and it is found in O(log n).
+ * <p>
+ * The replicas take turns answering messages with diff. A message holds fingerprints of ranges and the
+ * elements of ranges small enough to send. A range whose fingerprints agree is done. A range that differs is
+ * answered with its elements when it is small, otherwise split into parts whose fingerprints are sent back, so
+ * every difference is found after O(log n) rounds of O(1) fingerprints. Removals are not reconciled, an
+ * element on either side ends up on both.
+ * <p>
+ * An element is hashed from its encoding by the SnapshotCodec the set is created with, not from its hashCode,
+ * so elements with equal hash codes still differ in the fingerprints. Both replicas must use the same codec.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class ReconcilableTreeSet<T extends Comparable<? super T>> implements Iterable<T> {
+
+
+    /**
+     * Fingerprint of a range of elements, the number of elements and the sum of their 128-bit hashes, summed
+     * as two 64-bit halves
+     */
+    static final class Fingerprint {
+
+        static final Fingerprint EMPTY = new Fingerprint(0, 0, 0);
+
+        final int count;
+        final long low;
+        final long high;
+
+        Fingerprint(int count, long low, long high) {
+            this.count = count;
+            this.low = low;
+            this.high = high;
+        }
+
+        Fingerprint plus(Fingerprint other) {
+            return new Fingerprint(count + other.count, low + other.low, high + other.high);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint))
+                return false;
+
+            Fingerprint other = (Fingerprint) o;
+            return other.count == count && other.low == low && other.high == high;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(low) * 31 + count;
+        }
+
+        public String toString() {
+            return count + " elements, hash " + Long.toHexString(high) + Long.toHexString(low);
+        }
+    }
+
+
+    /**
+     * Fingerprint of the elements greater than or equal to from and less than to, where a null bound leaves
+     * that side open
+     */
+    public static final class Digest<T> {
+
+        private final T from;
+        private final T to;
+        private final Fingerprint fingerprint;
+
+        Digest(T from, T to, Fingerprint fingerprint) {
+            this.from = from;
+            this.to = to;
+            this.fingerprint = fingerprint;
+        }
+
+        public T from() {
+            return from;
+        }
+
+        public T to() {
+            return to;
+        }
+
+        public int count() {
+            return fingerprint.count;
+        }
+
+        public String toString() {
+            return "[" + from + ", " + to + ") " + fingerprint;
+        }
+    }
+
+
+    /**
+     * One turn of a reconciliation, see diff
+     */
+    public static final class Message<T> {
+
+        private final List<Digest<T>> digests = new ArrayList<>();
+        private final List<Digest<T>> itemRanges = new ArrayList<>(); // the ranges whose elements are sent
+        private final List<List<T>> items = new ArrayList<>();
+        private final List<Boolean> replies = new ArrayList<>(); // whether the sender wants its missing elements
+
+        /**
+         * Returns true if the reconciliation is done
+         */
+
+        public boolean isEmpty() {
+            return digests.isEmpty() && items.isEmpty();
+        }
+
+        public List<Digest<T>> digests() {
+            return Collections.unmodifiableList(digests);
+        }
+
+        /**
+         * Returns the number of elements sent with the message
+         */
+
+        public int itemCount() {
+            int count = 0;
+            for (List<T> range : items)
+                count += range.size();
+            return count;
+        }
+
+        /**
+         * Writes the message with the codec writing the elements, see SnapshotCodec
+         */
+
+        public void write(DataOutput out, SnapshotCodec<T> codec) throws IOException {
+            out.writeInt(digests.size());
+            for (Digest<T> digest : digests) {
+                writeRange(digest, out, codec);
+                out.writeInt(digest.fingerprint.count);
+                out.writeLong(digest.fingerprint.low);
+                out.writeLong(digest.fingerprint.high);
+            }
+
+            out.writeInt(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                writeRange(itemRanges.get(i), out, codec);
+                out.writeBoolean(replies.get(i));
+                out.writeInt(items.get(i).size());
+
+                T previous = null;
+                for (T item : items.get(i)) {
+                    codec.write(previous, item, out);
+                    previous = item;
+                }
+            }
+        }
+
+        public static <T> Message<T> read(DataInput in, SnapshotCodec<T> codec) throws IOException {
+            Message<T> message = new Message<>();
+
+            int digests = in.readInt();
+            for (int i = 0; i < digests; i++) {
+                Digest<T> range = readRange(in, codec);
+                Fingerprint fingerprint = new Fingerprint(in.readInt(), in.readLong(), in.readLong());
+                message.digests.add(new Digest<>(range.from, range.to, fingerprint));
+            }
+
+            int itemRanges = in.readInt();
+            for (int i = 0; i < itemRanges; i++) {
+                message.itemRanges.add(readRange(in, codec));
+                message.replies.add(in.readBoolean());
+
+                int count = in.readInt();
+                List<T> range = new ArrayList<>(count);
+                T previous = null;
+                for (int j = 0; j < count; j++) {
+                    previous = codec.read(previous, in);
+                    range.add(previous);
+                }
+                message.items.add(range);
+            }
+            return message;
+        }
+
+        private static <T> void writeRange(Digest<T> range, DataOutput out, SnapshotCodec<T> codec)
+                throws IOException {
+            out.writeByte((range.from != null ? 1 : 0) | (range.to != null ? 2 : 0));
+            if (range.from != null)
+                codec.write(null, range.from, out);
+            if (range.to != null)
+                codec.write(null, range.to, out);
+        }
+
+        private static <T> Digest<T> readRange(DataInput in, SnapshotCodec<T> codec) throws IOException {
+            int bounds = in.readByte();
+            T from = (bounds & 1) != 0 ? codec.read(null, in) : null;
+            T to = (bounds & 2) != 0 ? codec.read(null, in) : null;
+            return new Digest<>(from, to, Fingerprint.EMPTY);
+        }
+    }
+
+
+    static final int ITEM_THRESHOLD = 16; // ranges with at most this many elements are sent as elements
+    static final int SPLIT_PARTS = 8; // a range that differs is split into this many parts
+
+    private final SnapshotCodec<T> codec;
+    private final EncodingBuffer buffer = new EncodingBuffer(); // reused for every element hashed
+    private final DataOutputStream encoder = new DataOutputStream(buffer);
+
+    private final AggregatedTreeSet<T, Fingerprint> set = new AggregatedTreeSet<>(
+            Aggregator.of(Fingerprint.EMPTY, this::fingerprint, Fingerprint::plus));
+
+
+    /**
+     * Creates a replica hashing its elements from their encoding by the codec
+     *
+     * @param codec the codec encoding the elements, the same on every replica
+     */
+
+    public ReconcilableTreeSet(SnapshotCodec<T> codec) {
+        if (codec == null)
+            throw new NullPointerException("Codec is null");
+        this.codec = codec;
+    }
+
+
+    public boolean add(T t) {
+        return set.add(t);
+    }
+
+
+    public boolean remove(T t) {
+        return set.remove(t);
+    }
+
+
+    public boolean contains(T t) {
+        return set.contains(t);
+    }
+
+
+    public int size() {
+        return set.size();
+    }
+
+
+    public boolean isEmpty() {
+        return set.isEmpty();
+    }
+
+
+    public void clear() {
+        set.clear();
+    }
+
+
+    public Iterator<T> iterator() {
+        return set.iterator();
+    }
+
+
+    /**
+     * Returns the fingerprint of the elements greater than or equal to from and less than to in O(log n)
+     *
+     * @param from the least element of the range, or null for a range without lower bound
+     * @param to   the element above the range, or null for a range without upper bound
+     */
+
+    public Digest<T> digest(T from, T to) {
+        return new Digest<>(from, to, set.aggregate(from, to));
+    }
+
+
+    /**
+     * Returns the first message of a reconciliation, the fingerprint of every element
+     */
+
+    public Message<T> startReconciliation() {
+        Message<T> message = new Message<>();
+        message.digests.add(digest(null, null));
+        return message;
+    }
+
+
+    /**
+     * Answers a message from the other replica, adding the elements it sent that are missing here. The
+     * reconciliation is done when the answer is empty.
+     *
+     * @param remote the message from the other replica
+     * @return the message to send back
+     */
+
+    public Message<T> diff(Message<T> remote) {
+        Message<T> reply = new Message<>();
+
+        for (int i = 0; i < remote.items.size(); i++) {
+            Digest<T> range = remote.itemRanges.get(i);
+            List<T> received = remote.items.get(i);
+            List<T> missing = remote.replies.get(i) ? missingFrom(received, range) : List.of();
+
+            for (T item : received)
+                set.add(item);
+            if (!missing.isEmpty())
+                addItems(reply, range, missing, false);
+        }
+
+        for (Digest<T> digest : remote.digests) {
+            Fingerprint local = set.aggregate(digest.from, digest.to);
+            if (local.equals(digest.fingerprint))
+                continue;
+
+            if (local.count <= ITEM_THRESHOLD)
+                addItems(reply, digest, elements(digest.from, digest.to), true);
+            else
+                split(reply, digest.from, digest.to, local.count);
+        }
+        return reply;
+    }
+
+
+    /**
+     * Adds the fingerprints of parts of the range holding about the same number of elements to the message
+     */
+
+    private void split(Message<T> message, T from, T to, int count) {
+        int first = from == null ? 0 : set.aggregate(null, from).count; // the index of the first element
+        T lower = from;
+        for (int part = 1; part < SPLIT_PARTS; part++) {
+            T upper = set.select(first + (int) ((long) count * part / SPLIT_PARTS), fingerprint -> fingerprint.count);
+            if (lower != null && upper.compareTo(lower) <= 0)
+                continue; // parts can only be empty when the range holds fewer elements than parts
+
+            message.digests.add(digest(lower, upper));
+            lower = upper;
+        }
+        message.digests.add(digest(lower, to));
+    }
+
+    private static <T> void addItems(Message<T> message, Digest<T> range, List<T> items, boolean reply) {
+        message.itemRanges.add(new Digest<>(range.from, range.to, Fingerprint.EMPTY));
+        message.items.add(items);
+        message.replies.add(reply);
+    }
+
+    /**
+     * Returns the elements of the range in ascending order
+     */
+
+    private List<T> elements(T from, T to) {
+        List<T> elements = new ArrayList<>();
+        for (Iterator<T> i = set.iteratorFrom(from); i.hasNext(); ) {
+            T element = i.next();
+            if (to != null && element.compareTo(to) >= 0)
+                break;
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    /**
+     * Returns the elements of the range that are not among the received ones, which are sorted
+     */
+
+    private List<T> missingFrom(List<T> received, Digest<T> range) {
+        List<T> missing = new ArrayList<>();
+        int next = 0;
+        for (T element : elements(range.from, range.to)) {
+            while (next < received.size() && received.get(next).compareTo(element) < 0)
+                next++;
+            if (next == received.size() || received.get(next).compareTo(element) != 0)
+                missing.add(element);
+        }
+        return missing;
+    }
+
+    /**
+     * Byte array stream whose array can be read without copying it
+     */
+    private static final class EncodingBuffer extends ByteArrayOutputStream {
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    /**
+     * Returns the fingerprint of a single element, a 128-bit hash of its encoding. The encoding is read in
+     * words of eight bytes, each folded into two hashes with different seeds and mixed, and the length is
+     * folded in last so encodings that only differ in trailing zeros hash differently.
+     */
+
+    private Fingerprint fingerprint(T data) {
+        buffer.reset();
+        try {
+            codec.write(null, data, encoder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // never thrown by a stream writing into an array
+        }
+
+        byte[] bytes = buffer.bytes();
+        int length = buffer.size();
+        long low = 0x243F6A8885A308D3L;
+        long high = 0x13198A2E03707344L;
+        for (int i = 0; i < length; i += 8) {
+            long word = 0;
+            for (int j = Math.min(i + 8, length) - 1; j >= i; j--)
+                word = word << 8 | (bytes[j] & 0xFF);
+
+            low = mix(low ^ word);
+            high = mix(high + word * 0xC2B2AE3D27D4EB4FL);
+        }
+        return new Fingerprint(1, mix(low ^ length), mix(high + length));
+    }
+
+    /**
+     * Spreads the bits of a hash over 64 bits, the finalizer of SplitMix64
+     */
+
+    private static long mix(long hash) {
+        long h = hash + 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class ReconcilableTreeSetTest {
+
+    private final ReconcilableTreeSet<Long> a = new ReconcilableTreeSet<>(SnapshotCodec.LONG);
+    private final ReconcilableTreeSet<Long> b = new ReconcilableTreeSet<>(SnapshotCodec.LONG);
+
+    private long bytesSent;
+
+
+    /**
+     * Reconciles the replicas by passing the messages between them through bytes, like over a network
+     *
+     * @return the number of rounds
+     */
+
+    int reconcile() throws IOException {
+        return reconcile(a, b, SnapshotCodec.LONG);
+    }
+
+    <T extends Comparable<? super T>> int reconcile(ReconcilableTreeSet<T> a, ReconcilableTreeSet<T> b,
+                                                    SnapshotCodec<T> codec) throws IOException {
+        ReconcilableTreeSet<T> sender = a, receiver = b;
+        ReconcilableTreeSet.Message<T> message = a.startReconciliation();
+
+        int rounds = 0;
+        while (!message.isEmpty()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            message.write(new DataOutputStream(bytes), codec);
+            bytesSent += bytes.size();
+
+            message = receiver.diff(ReconcilableTreeSet.Message.read(
+                    new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), codec));
+
+            ReconcilableTreeSet<T> swap = sender;
+            sender = receiver;
+            receiver = swap;
+            rounds++;
+        }
+        return rounds;
+    }
+
+    <T extends Comparable<? super T>> List<T> elements(ReconcilableTreeSet<T> set) {
+        List<T> elements = new ArrayList<>();
+        set.iterator().forEachRemaining(elements::add);
+        return elements;
+    }
+
+    @Test
+    void testDigestDoesNotDependOnShape() {
+        for (long n = 0; n < 1000; n++)
+            a.add(n);
+        for (long n = 999; n >= 0; n--)
+            b.add(n);
+
+        assertEquals(a.digest(null, null).toString(), b.digest(null, null).toString());
+        assertEquals(a.digest(100L, 200L).toString(), b.digest(100L, 200L).toString());
+        assertEquals(100, a.digest(100L, 200L).count());
+        b.remove(150L);
+        assertNotEquals(a.digest(100L, 200L).toString(), b.digest(100L, 200L).toString());
+        assertEquals(a.digest(200L, null).toString(), b.digest(200L, null).toString());
+    }
+
+    @Test
+    void testEqualReplicasNeedOneRound() throws IOException {
+        for (long n = 0; n < 1000; n++) {
+            a.add(n);
+            b.add(n);
+        }
+        assertEquals(1, reconcile());
+    }
+
+    @Test
+    void testFewDifferencesInLargeReplicas() throws IOException {
+        Random rnd = new Random();
+        TreeSet<Long> union = new TreeSet<>();
+        for (int n = 0; n < 100000; n++) {
+            long element = rnd.nextLong();
+            union.add(element);
+            // a few elements are only on one side
+            int side = rnd.nextInt(10000);
+            if (side != 0)
+                a.add(element);
+            if (side != 1)
+                b.add(element);
+        }
+
+        reconcile();
+        assertEquals(new ArrayList<>(union), elements(a));
+        assertEquals(new ArrayList<>(union), elements(b));
+
+        // the whole set would be at least 100000 elements of about 9 bytes
+        assertTrue(bytesSent < 100000, "sent " + bytesSent + " bytes");
+    }
+
+    @Test
+    void testEmptyReplica() throws IOException {
+        for (long n = 0; n < 500; n++)
+            b.add(n * 3);
+
+        reconcile();
+        assertEquals(elements(b), elements(a));
+        assertEquals(500, a.size());
+    }
+
+    @Test
+    void testElementsWithEqualHashCodes() throws IOException {
+        assertEquals(Long.valueOf(0L).hashCode(), Long.valueOf(0x100000001L).hashCode());
+        a.add(0L);
+        b.add(0x100000001L);
+        reconcile();
+        assertEquals(List.of(0L, 0x100000001L), elements(a));
+        assertEquals(List.of(0L, 0x100000001L), elements(b));
+
+        ReconcilableTreeSet<String> c = new ReconcilableTreeSet<>(SnapshotCodec.STRING);
+        ReconcilableTreeSet<String> d = new ReconcilableTreeSet<>(SnapshotCodec.STRING);
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        c.add("Aa");
+        d.add("BB");
+        reconcile(c, d, SnapshotCodec.STRING);
+        assertEquals(List.of("Aa", "BB"), elements(c));
+        assertEquals(List.of("Aa", "BB"), elements(d));
+    }
+}
@@ -1,6 +1,12 @@
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 
 /**
@@ -27,7 +33,12 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     static class Node<T> {
 
         T data;
+        Object value; // only used by MyTreeMap
+        int count = 1; // occurrences of the data, only used by MyTreeMultiset
+        Object summary; // summary of the subtree under the node, only used by an Augmentation
+        long prefix; // order preserving prefix of the data, only used with a KeyNormalizer
         Color color;
+        int rank; // rank of the node, only used by the AVL and WAVL balancing policies
 
         Node<T> parent; //parent node
         Node<T> left;  //left child node
@@ -51,6 +62,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
             left = right = parent =
                     nextLargest = nextSmallest = this;
             color = Color.BLACK;
+            rank = -1;
         }
 
 
@@ -60,8 +72,9 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
 
         void copy(Node<T> other) {
             data = other.data;
-            nextSmallest = other.nextSmallest;
-            nextLargest = other.nextLargest;
+            prefix = other.prefix;
+            value = other.value;
+            count = other.count;
         }
 
         boolean isLeftChild() {
@@ -105,6 +118,14 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
             return this == parent.left ? parent.right : parent.left;
         }
 
+        /**
+         * Sets the rank of the node to its height, one more than the rank of its higher child
+         */
+
+        void updateHeight() {
+            rank = Math.max(left.rank, right.rank) + 1;
+        }
+
         public String toString() {
             return "(" +
                     data + ": " + color + ", " +
@@ -115,12 +136,68 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     }
 
 
+    /**
+     * Inner interface for keeping a summary of every subtree in the root node of the subtree, like the greatest
+     * end point of the intervals in an interval tree. The tree calls update on every node whose children or
+     * data have changed, from the bottom up, so a summary can be computed from the data of the node and the
+     * summaries of its children.
+     */
+    interface Augmentation<T> {
+
+        /**
+         * Computes the summary of the node. The summary of a nil child is always null.
+         *
+         * @param node the node to update, whose children are already up to date
+         */
+
+        void update(Node<T> node);
+    }
+
+
+    private static final int PARALLEL_THRESHOLD = 1 << 12; // smaller trees are walked by the calling thread
+
     private final Node<T> nil = new Node<>(); // deafault black node that every leaf has a pointer to
     private Node<T> root;
 
     private int size = 0;
     private int modCount = 0;
 
+    private final Augmentation<T> augmentation; // null unless the nodes keep summaries of their subtrees
+
+    private final BalancingPolicy policy;
+
+    private KeyNormalizer<? super T> normalizer; // null unless the nodes keep prefixes of their data
+
+    private int splayLimit = Integer.MAX_VALUE; // rotations per access, only used by the splay policy
+
+    private boolean fingerSearch;
+    private Node<T> finger; // the node accessed last, only kept with finger search and always a node in the tree
+
+
+    public RedBlackBinaryTree() {
+        this(BalancingPolicy.RED_BLACK);
+    }
+
+    /**
+     * Creates a tree balanced by the given policy instead of the red-black rules
+     */
+
+    public RedBlackBinaryTree(BalancingPolicy policy) {
+        this(null, policy);
+    }
+
+    RedBlackBinaryTree(Augmentation<T> augmentation) {
+        this(augmentation, BalancingPolicy.RED_BLACK);
+    }
+
+    RedBlackBinaryTree(Augmentation<T> augmentation, BalancingPolicy policy) {
+        if (policy == null)
+            throw new NullPointerException("Balancing policy is null");
+
+        this.augmentation = augmentation;
+        this.policy = policy;
+    }
+
     /**
      * Inserts an element into the tree
      *
@@ -131,10 +208,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     public boolean add(T data) {
         int originalSize = size();
 
-        if (insert(data)) {
-            size++;
-            modCount++;
-        }
+        insert(data);
         return size() > originalSize;
     }
 
@@ -148,10 +222,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     public boolean remove(T data) {
         int originalSize = size();
 
-        if (delete(data)) {
-            size--;
-            modCount++;
-        }
+        delete(data);
         return size() < originalSize;
     }
 
@@ -164,13 +235,25 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
         return size;
     }
 
+    public BalancingPolicy policy() {
+        return policy;
+    }
+
 
     private static final boolean LOWER = false;
     private static final boolean HIGHER = true;
 
 
     public T lower(T data) {
-        Node<T> param = new Node<T>(data, nil, nil);
+        if (isEmpty())
+            return null;
+
+        if (fingerSearch) {
+            Node<T> node = searchNode(data);
+            return (data.compareTo(node.data) > 0 ? node : node.nextSmallest).data;
+        }
+
+        Node<T> param = newNode(data, nil);
         Node<T> end = findMinNode(root);
 
         if (data.compareTo(end.data) <= 0)
@@ -180,7 +263,15 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     }
 
     public T higher(T data) {
-        Node<T> param = new Node<T>(data, nil, nil);
+        if (isEmpty())
+            return null;
+
+        if (fingerSearch) {
+            Node<T> node = searchNode(data);
+            return (data.compareTo(node.data) < 0 ? node : node.nextLargest).data;
+        }
+
+        Node<T> param = newNode(data, nil);
         Node<T> end = findMaxNode(root);
 
         if (data.compareTo(end.data) >= 0)
@@ -189,6 +280,109 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
         return getLowerOrHigher(param, end, HIGHER);
     }
 
+
+    /*
+     * Batch probes. The probes must be sorted in ascending order, and each one is answered from the ceiling
+     * of the probe before it: the search climbs from that node to the lowest common ancestor of it and the
+     * next ceiling and descends from there, so close probes cost a few comparisons instead of a search from
+     * the root. The results are written to the array given by the caller at the index of the probe.
+     */
+
+    /**
+     * Sets results[i] to whether probes[i] is in the tree
+     *
+     * @return the number of probes in the tree
+     */
+
+    public int containsAll(T[] probes, boolean[] results) {
+        checkBatch(probes, results.length);
+
+        int found = 0;
+        Node<T> ceiling = nil;
+        for (int i = 0; i < probes.length; i++) {
+            ceiling = nextCeiling(ceiling, probes, i);
+            results[i] = ceiling != nil && probes[i].compareTo(ceiling.data) == 0;
+            if (results[i])
+                found++;
+        }
+        return found;
+    }
+
+    /**
+     * Sets results[i] to lower(probes[i])
+     */
+
+    public void lowerAll(T[] probes, T[] results) {
+        checkBatch(probes, results.length);
+
+        Node<T> last = lastNodeOrNil(); // the lower of every probe greater than all elements
+        Node<T> ceiling = nil;
+        for (int i = 0; i < probes.length; i++) {
+            ceiling = nextCeiling(ceiling, probes, i);
+            results[i] = (ceiling != nil ? ceiling.nextSmallest : last).data;
+        }
+    }
+
+    /**
+     * Sets results[i] to higher(probes[i])
+     */
+
+    public void higherAll(T[] probes, T[] results) {
+        checkBatch(probes, results.length);
+
+        Node<T> ceiling = nil;
+        for (int i = 0; i < probes.length; i++) {
+            ceiling = nextCeiling(ceiling, probes, i);
+            results[i] = ceiling != nil && probes[i].compareTo(ceiling.data) == 0 ? ceiling.nextLargest.data
+                    : ceiling.data;
+        }
+    }
+
+    private void checkBatch(T[] probes, int resultLength) {
+        if (resultLength < probes.length)
+            throw new IllegalArgumentException("Room for " + resultLength + " results but " + probes.length
+                    + " probes");
+    }
+
+    /**
+     * Finds the ceiling of probes[i] from the ceiling of the probe before it, or from the root for the first
+     * probe
+     */
+
+    private Node<T> nextCeiling(Node<T> previous, T[] probes, int i) {
+        T data = probes[i];
+        if (data == null)
+            throw new NullPointerException();
+        if (i == 0)
+            return findCeilingNode(data);
+
+        if (data.compareTo(probes[i - 1]) < 0)
+            throw new IllegalArgumentException("Probes are not sorted at index " + i);
+
+        // every element is less than the probe before, and so less than this one
+        if (previous == nil || data.compareTo(previous.data) <= 0)
+            return previous;
+
+        // climb until the probe lies between the node and its parent, above which there is no need to look
+        Node<T> node = previous;
+        while (!node.isRoot() && !(node.isLeftChild() && data.compareTo(node.parent.data) <= 0))
+            node = node.parent;
+
+        Node<T> result = node.isRoot() ? nil : node.parent;
+        while (node != nil) {
+            int comparison = data.compareTo(node.data);
+            if (comparison == 0)
+                return node;
+
+            if (comparison < 0) {
+                result = node;
+                node = node.left;
+            } else
+                node = node.right;
+        }
+        return result;
+    }
+
     private T getLowerOrHigher(Node<T> param, Node<T> result, boolean higher) {
         Node<T> node = root;
         while (node != nil) {
@@ -216,10 +410,250 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
 
     public void clear() {
         root = null;
+        finger = null;
         size = 0;
         modCount++;
     }
 
+    /**
+     * Sets the normalizer giving the prefixes compared before the data itself, or removes it if null. The
+     * prefix of every element is computed at once and then once for every inserted element. Searches for
+     * contains, add, remove, floor and ceiling from the root compare the prefix of the data with the prefix
+     * of each node first, which does not touch the data of the node, and only call compareTo on equal
+     * prefixes. For strings sharing few leading characters most comparisons then end at the prefix.
+     */
+
+    public void setKeyNormalizer(KeyNormalizer<? super T> normalizer) {
+        this.normalizer = normalizer;
+        if (normalizer != null && !isEmpty())
+            for (Node<T> node = firstNodeOrNil(); node != nil; node = node.nextLargest)
+                node.prefix = normalizer.prefix(node.data);
+    }
+
+    /**
+     * Bounds the rotations a splay tree makes for each access. A node found deeper than the limit is only
+     * moved part of the way to the root, so a single access costs O(limit) restructuring at most, while nodes
+     * accessed again and again still reach the top after a few accesses. The amortized O(log n) bound of a
+     * splay tree only holds without a limit, which is the default.
+     *
+     * @param rotations the most rotations per access, at least 1
+     */
+
+    public void setSplayLimit(int rotations) {
+        if (rotations < 1)
+            throw new IllegalArgumentException("Splay limit must be positive: " + rotations);
+        splayLimit = rotations;
+    }
+
+    int splayLimit() {
+        return splayLimit;
+    }
+
+    /**
+     * Turns finger search on or off. With finger search contains, add, remove, lower and higher start from the
+     * node accessed last instead of from the root. The search climbs from that node only until it reaches a
+     * subtree whose range holds the data and then descends. The climb only follows parent links, so a search
+     * still costs O(log n) in the worst case: two neighbouring elements on either side of the root are a
+     * distance of 1 apart, but the climb goes all the way up. For a sweep through the elements in order the
+     * searches cost O(1) amortized, O(log d) for steps of d elements, since only a few of them cross the
+     * boundary of a high subtree. This pays off when every access is close to the one before it, like for
+     * nearly sorted data, but costs a few extra comparisons for random access.
+     */
+
+    public void setFingerSearch(boolean enabled) {
+        fingerSearch = enabled;
+        finger = null;
+    }
+
+    /**
+     * Removes every element greater than or equal to from and less than to. Instead of deleting the elements
+     * one at a time the tree is split around the range and the parts outside of it are joined again, so the
+     * red-black rules are restored once for the whole range. The removed nodes form a contiguous segment of
+     * the nextSmallest/nextLargest thread, which is cut out with a single splice.
+     * <p>
+     * The splits and the join cost O(log^2 n) and counting the removed elements O(k), compared to
+     * O(k log n) for k calls to remove. Trees with another balancing policy than red-black remove the
+     * elements one at a time.
+     *
+     * @param from the least element to remove, or null to remove from the first element
+     * @param to   the element above the greatest element to remove, or null to remove through the last element
+     * @return the number of elements removed
+     */
+
+    public int removeRange(T from, T to) {
+        if (isEmpty() || from != null && to != null && from.compareTo(to) >= 0)
+            return 0;
+
+        Node<T> first = from == null ? findMinNode(root) : findCeilingNode(from);
+        Node<T> after = to == null ? nil : findCeilingNode(to);
+        if (first == nil || first == after)
+            return 0;
+
+        int removed = 0;
+        for (Node<T> node = first; node != after; node = node.nextLargest)
+            removed++;
+
+        if (removed == size) {
+            clear();
+            return removed;
+        }
+
+        if (!policy.keepsColors()) {
+            // the join below restores black heights, which says nothing about ranks
+            for (int i = 0; i < removed; i++)
+                delete(from == null ? findMinNode(root) : findCeilingNode(from));
+            return removed;
+        }
+
+        Node<T> before = first.nextSmallest;
+
+        // split off the elements below the range and then the range itself from the elements above it
+        Split<T> split = new Split<>();
+        split(root, first.data, false, split);
+        Node<T> below = split.left;
+        split(split.right, after == nil ? null : after.data, false, split);
+        Node<T> above = split.right;
+
+        if (below == nil)
+            root = above;
+        else if (above == nil)
+            root = below;
+        else {
+            // the least element above the range is split off to join the two parts around it
+            split(above, after.data, true, split);
+            root = join(below, split.left, split.right);
+        }
+        root.parent = null;
+        root.color = Color.BLACK;
+
+        // splice the removed segment out of the thread
+        before.nextLargest = after;
+        after.nextSmallest = before;
+
+        finger = null;
+        size -= removed;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Replaces the content of the tree with the given elements in linear time. Instead of inserting one element
+     * at a time the tree is built directly as a complete binary tree where only the nodes on the deepest,
+     * not completely filled, level are red and the rank of every node is its height, which satisfies every
+     * balancing policy. The nextSmallest and nextLargest links are set as the nodes are
+     * built in order.
+     *
+     * @param sorted the elements in strictly ascending order
+     * @param size   the number of elements to take from the iterator
+     */
+
+    void buildFromSorted(Iterator<? extends T> sorted, int size) {
+        clear();
+        if (size == 0)
+            return;
+
+        Node<T>[] previous = newNodeHolder(nil);
+        root = buildFromSorted(0, 0, size - 1, redLevel(size), sorted, previous);
+
+        // close the thread through the nil node like insertUpdateNextNodes does
+        previous[0].nextLargest = nil;
+        nil.nextSmallest = previous[0];
+
+        this.size = size;
+    }
+
+    /**
+     * Builds the subtree for the elements in the range [low, high] and links its nodes into the thread after
+     * the node held by previous, which is updated to the greatest node of the subtree.
+     *
+     * @return the root of the subtree
+     */
+
+    private Node<T> buildFromSorted(int level, int low, int high, int redLevel,
+                                    Iterator<? extends T> sorted, Node<T>[] previous) {
+        int middle = (low + high) >>> 1;
+
+        Node<T> left = nil;
+        if (low < middle)
+            left = buildFromSorted(level + 1, low, middle - 1, redLevel, sorted, previous);
+
+        Node<T> node = newNode(sorted.next(), left);
+        if (left != nil)
+            left.parent = node;
+        if (level != redLevel)
+            node.color = Color.BLACK;
+
+        node.nextSmallest = previous[0];
+        previous[0].nextLargest = node;
+        previous[0] = node;
+
+        if (middle < high) {
+            node.right = buildFromSorted(level + 1, middle + 1, high, redLevel, sorted, previous);
+            node.right.parent = node;
+        }
+        node.updateHeight();
+        augment(node);
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newNodeHolder(Node<T> node) {
+        Node<T>[] holder = (Node<T>[]) new Node<?>[1];
+        holder[0] = node;
+        return holder;
+    }
+
+    /**
+     * Finds the level to color red when building a tree of the given size, the deepest level in the tree
+     * if it is not completely filled and otherwise a level below it
+     */
+
+    private static int redLevel(int size) {
+        int level = 0;
+        for (int n = size - 1; n >= 0; n = n / 2 - 1)
+            level++;
+
+        return level;
+    }
+
+    /**
+     * Copies the elements in ascending order into the array by walking the nextLargest links from the
+     * smallest node, without the allocation and modification checks of an iterator.
+     *
+     * @param array  the array to copy to, with room for size() elements after the offset
+     * @param offset the index of the first element in the array
+     */
+
+    void copyTo(Object[] array, int offset) {
+        checkRoom(array.length, offset);
+        if (isEmpty())
+            return;
+
+        for (Node<T> node = findMinNode(root); node != nil; node = node.nextLargest)
+            array[offset++] = node.data;
+    }
+
+    /**
+     * Same as copyTo(Object[], int) but for integral elements, that are copied as longs
+     *
+     * @throws ClassCastException if the elements are not numbers
+     */
+
+    void copyTo(long[] array, int offset) {
+        checkRoom(array.length, offset);
+        if (isEmpty())
+            return;
+
+        for (Node<T> node = findMinNode(root); node != nil; node = node.nextLargest)
+            array[offset++] = ((Number) node.data).longValue();
+    }
+
+    private void checkRoom(int length, int offset) {
+        if (offset < 0 || length - offset < size)
+            throw new IndexOutOfBoundsException("No room for " + size + " elements at " + offset
+                    + " in array of length " + length);
+    }
+
     public boolean contains(T data) {
         return findNode(data) != nil;
     }
@@ -231,7 +665,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
             return "[]";
 
         builder.append("[");
-        buildString(builder, root);
+        buildString(builder, findMinNode(root));
         builder.append("]");
 
         return builder.toString();
@@ -245,34 +679,115 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
         return new RedBlackTreeIterator(true);
     }
 
+    /**
+     * Returns an iterator starting at the least element greater than or equal to the given one, or if
+     * descending at the greatest element less than or equal to it.
+     */
+
+    Iterator<T> iteratorFrom(T data, boolean descending) {
+        return new RedBlackTreeIterator(descending ? findFloorNode(data) : findCeilingNode(data), descending);
+    }
+
+    /*
+     * Node level access used by MyTreeMap and Cursor to reach the nodes found by a search.
+     * The methods return null instead of nil when there is no such node.
+     */
+
+    Node<T> getNode(T data) {
+        return data == null ? null : orNull(findNode(data));
+    }
+
+    Node<T> floorNode(T data) {
+        return orNull(findFloorNode(data));
+    }
+
+    Node<T> ceilingNode(T data) {
+        return orNull(findCeilingNode(data));
+    }
+
+    Node<T> lowerNode(T data) {
+        Node<T> ceiling = findCeilingNode(data);
+        return orNull(ceiling != nil ? ceiling.nextSmallest : lastNodeOrNil());
+    }
+
+    Node<T> higherNode(T data) {
+        Node<T> floor = findFloorNode(data);
+        return orNull(floor != nil ? floor.nextLargest : firstNodeOrNil());
+    }
+
+    Node<T> firstNode() {
+        return orNull(firstNodeOrNil());
+    }
+
+    Node<T> lastNode() {
+        return orNull(lastNodeOrNil());
+    }
+
+    Node<T> nextNode(Node<T> node) {
+        return orNull(node.nextLargest);
+    }
+
+    Node<T> previousNode(Node<T> node) {
+        return orNull(node.nextSmallest);
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
+    private Node<T> firstNodeOrNil() {
+        return isEmpty() ? nil : findMinNode(root);
+    }
+
+    private Node<T> lastNodeOrNil() {
+        return isEmpty() ? nil : findMaxNode(root);
+    }
+
+    private Node<T> orNull(Node<T> node) {
+        return node == nil ? null : node;
+    }
+
+    public T floor(T data) {
+        return findFloorNode(data).data;
+    }
+
+    public T ceiling(T data) {
+        return findCeilingNode(data).data;
+    }
+
 
     /**
      * Inserts a node into the tree by traversing to its potential parent node
      * Calls method for ensuring balance of the tree as well as updating links to reference nodes used by the iterator
      *
      * @param data the data to be inserted
-     * @return false if the data is null or if it is already in the tree and true if insertion was successful
+     * @return the inserted node, the node already holding the data or nil if the data is null. The size of the
+     * tree tells if a node was inserted.
      */
 
-    private boolean insert(T data) {
+    Node<T> insert(T data) {
         if (data == null)
-            return false;
+            return nil;
 
-        Node<T> node = new Node<>(data, nil, nil);
+        Node<T> node = newNode(data, nil);
         if (isEmpty())
             root = node; // if the tree is empty we make the inserted node the root
 
         else {
-            Node<T> current = root;
+            Node<T> current = searchStart(data);
             Node<T> parent = nil;
             //traverse the tree down to the last node or return false if we found node with same value
             while (current != nil) {
                 parent = current;
 
-                if (equals(node, current))
-                    return false;
+                int comparison = compare(node, current);
+                if (comparison == 0) {
+                    moveFinger(current);
+                    policy.accessed(this, current);
+                    return current;
+                }
 
-                current = lessThan(node, current) ? current.left : current.right;
+                current = comparison < 0 ? current.left : current.right;
             }
             if (lessThan(node, parent))
                 parent.left = node;
@@ -282,9 +797,13 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
             node.parent = parent;
         }
         insertUpdateNextNodes(node);
-        balanceInsertion1(node);
+        augmentPath(node);
+        policy.inserted(this, node);
+        moveFinger(node);
 
-        return true;
+        size++;
+        modCount++;
+        return node;
     }
 
     /**
@@ -321,7 +840,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
      * @param node the newly inserted node
      */
 
-    private void balanceInsertion1(Node<T> node) {
+    void balanceInsertion1(Node<T> node) {
         while (!node.isRoot() && node.isRed() && node.parent.isRed()) {
             Node<T> grandParent = node.grandparent();
             Node<T> uncle = node.uncle();
@@ -409,7 +928,8 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
      * If the node has two, non-nil children we copy the data from its maximum predecessor and then making
      * the same operation on the predecessor until the node to be deleted is a leaf node.
      * If the node has one child we simply copy the data from its only child due to the fact that the balance
-     * of the tree ensures that the only child will be a leaf node
+     * of the tree ensures that the only child will be a leaf node, except in a splay tree where the data of
+     * the successor is copied the same way
      * If the node has no child we can simply cut it of.
      * <p>
      * Calls on methods rebalancing the tree if the node to be deleted is black. It can be seen as carrying
@@ -427,43 +947,57 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
         // find node to be deleted
         Node<T> node = findNode(data);
 
-        if (node != nil) {
-            deleteUpdateNextNodes(node); // update nextSmallest and nextLargest link
-            Node<T> toDelete = node;
-            if (node.left != nil && node.right != nil) { // node to be removed has two children
-                // traverse the to find the node to be cut of the tree aswell as copy data upwards
-                while (node.left != nil) {
-                    toDelete = findMaxNode(node.left);
-                    node.copy(toDelete);
-                    node = toDelete;
-                }
+        if (node != nil)
+            delete(node);
+
+        return node != nil;
+    }
 
-            } else { // node has at least one child
+    /**
+     * Deletes a node found by an earlier search, see delete(T). Since data is copied between nodes the node
+     * might be left in the tree holding other data.
+     *
+     * @param node the node holding the data to be deleted
+     */
 
-                if (node.left != nil)
-                    toDelete = node.left;
+    void delete(Node<T> node) {
+        Node<T> toDelete = node;
+        // traverse the to find the node to be cut of the tree aswell as copy data upwards, from the predecessor
+        // while there is a left child. In a balanced tree an only child is a leaf and is copied in one step,
+        // in a splay tree the only child may have children of its own.
+        while (node.left != nil || node.right != nil) {
+            toDelete = node.left != nil ? findMaxNode(node.left) : findMinNode(node.right);
+            node.copy(toDelete);
+            node = toDelete;
+        }
 
-                else if (node.right != nil)
-                    toDelete = node.right;
+        // data has only been shifted between neighbours, so the node cut of is the only one leaving the thread
+        deleteUpdateNextNodes(toDelete); // update nextSmallest and nextLargest link
 
-                node.data = toDelete.data;
-            }
+        policy.removing(this, toDelete); // the red-black rules are restored while the leaf is in place
 
-            balanceDeletion1(toDelete); // balance the tree if needed
+        // the deleted node leaves the tree, its parent is the closest node that stays
+        Node<T> parent = toDelete.parent;
+        moveFinger(parent);
 
-            //finally delete the node
-            if (toDelete.isRoot())
-                root = null;
+        //finally delete the node
+        if (toDelete.isRoot())
+            root = null;
 
-            else {  //node is guaranteed to be a leaf at this point)
-                cutOf(toDelete);
-                //make sure the root stays black
-                root.color = Color.BLACK;
-            }
-        }
-        return node != nil;
+        else {  //node is guaranteed to be a leaf at this point)
+            cutOf(toDelete);
+            //make sure the root stays black
+            root.color = Color.BLACK;
 
+            // every node that lost the deleted node from its subtree or got new data is above it
+            augmentPath(toDelete.parent);
 
+            // the rank policies rebalance after the cut, from the leaf position left empty
+            policy.removed(this, parent);
+        }
+
+        size--;
+        modCount++;
     }
 
 
@@ -490,7 +1024,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
      * @param node the "double black" node needing balance
      */
 
-    private void balanceDeletion1(Node<T> node) {
+    void balanceDeletion1(Node<T> node) {
         if (node.isRed() || node.isRoot())
             return;
 
@@ -598,6 +1132,211 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
         }
     }
 
+    /**
+     * Returns the elements matching the predicate in ascending order, evaluating the predicate in parallel on
+     * the pool. The subtrees at the top of the tree are split into tasks until there are about four for every
+     * worker, and each task walks the nodes of its subtree along the nextLargest links. The predicate is called
+     * from several threads and in no particular order. The tree must not be changed meanwhile, and a subtree
+     * with only one child is not split, so a splay tree may be split unevenly.
+     *
+     * @param predicate the predicate to evaluate, which may be called by several threads at once
+     * @param pool      the pool to run the tasks on
+     */
+
+    List<T> parallelFilter(Predicate<? super T> predicate, ForkJoinPool pool) {
+        if (isEmpty())
+            return new ArrayList<>();
+        if (size < PARALLEL_THRESHOLD)
+            return new FilterTask(root, 0, predicate).compute();
+
+        int tasks = 4 * pool.getParallelism();
+        int depth = 32 - Integer.numberOfLeadingZeros(tasks - 1);
+        return pool.invoke(new FilterTask(root, depth, predicate));
+    }
+
+    /**
+     * Calls the action for every element in parallel on the pool, in no particular order, see parallelFilter
+     */
+
+    void parallelForEach(Consumer<? super T> action, ForkJoinPool pool) {
+        parallelFilter(data -> {
+            action.accept(data);
+            return false;
+        }, pool);
+    }
+
+    /**
+     * Task collecting the elements of a subtree matching a predicate, forking the left subtree and computing
+     * the right one itself until it is deep enough
+     */
+    @SuppressWarnings("serial") // never serialized, the task only lives during parallelFilter
+    private class FilterTask extends RecursiveTask<List<T>> {
+
+        private final Node<T> node;
+        private final int depth; // the levels left to split
+        private final Predicate<? super T> predicate;
+
+        FilterTask(Node<T> node, int depth, Predicate<? super T> predicate) {
+            this.node = node;
+            this.depth = depth;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (depth == 0 || node.left == nil || node.right == nil)
+                return filterSubtree();
+
+            FilterTask left = new FilterTask(node.left, depth - 1, predicate);
+            left.fork();
+            List<T> right = new FilterTask(node.right, depth - 1, predicate).compute();
+
+            List<T> matches = left.join();
+            if (predicate.test(node.data))
+                matches.add(node.data);
+            matches.addAll(right);
+            return matches;
+        }
+
+        private List<T> filterSubtree() {
+            List<T> matches = new ArrayList<>();
+            Node<T> last = findMaxNode(node);
+            for (Node<T> current = findMinNode(node); ; current = current.nextLargest) {
+                if (predicate.test(current.data))
+                    matches.add(current.data);
+                if (current == last)
+                    return matches;
+            }
+        }
+    }
+
+    /**
+     * Inner class holding the two trees a tree is split into
+     */
+    private static class Split<T> {
+
+        Node<T> left;
+        Node<T> right;
+    }
+
+    /**
+     * Splits the subtree into the nodes less than the data, and if inclusive equal to it, and the other nodes.
+     * Every node on the search path for the data is used to join the parts of the subtree on its side of the
+     * split, the other nodes keep their place in the subtrees hanging from the search path.
+     *
+     * @param node      the root of the subtree, nil for an empty subtree
+     * @param data      the data to split at, null to put every node in the left tree
+     * @param inclusive true if a node equal to the data goes to the left tree
+     * @param split     the roots of the left and right trees, nil for empty trees
+     */
+
+    private void split(Node<T> node, T data, boolean inclusive, Split<T> split) {
+        if (node == nil) {
+            split.left = split.right = nil;
+            return;
+        }
+        Node<T> left = detach(node.left);
+        Node<T> right = detach(node.right);
+
+        int comparison = data == null ? 1 : data.compareTo(node.data);
+        if (comparison < 0 || comparison == 0 && !inclusive) { // the node goes to the right tree
+            split(left, data, inclusive, split);
+            split.right = join(split.right, node, right);
+        } else {
+            split(right, data, inclusive, split);
+            split.left = join(left, node, split.left);
+        }
+    }
+
+    /**
+     * Joins two trees and a node between them into one tree, where every node in the left tree is less than
+     * the node and every node in the right tree is greater than it. The node is hung on the spine of the
+     * higher tree where the black heights of the trees are equal, after which the insertion fix-up restores
+     * the red-black rules like for a newly inserted node.
+     *
+     * @return the root of the joined tree
+     */
+
+    private Node<T> join(Node<T> left, Node<T> middle, Node<T> right) {
+        int leftHeight = blackHeightOfRoot(left);
+        int rightHeight = blackHeightOfRoot(right);
+
+        middle.left = middle.right = nil;
+        middle.parent = null;
+
+        if (leftHeight == rightHeight) {
+            middle.color = Color.BLACK;
+            adopt(middle, left, true);
+            adopt(middle, right, false);
+            augment(middle);
+            return middle;
+        }
+        boolean leftIsHigher = leftHeight > rightHeight;
+        Node<T> higher = leftIsHigher ? left : right;
+        int targetHeight = leftIsHigher ? rightHeight : leftHeight;
+
+        // descend the spine facing the lower tree to the first black node with the same black height
+        Node<T> parent = null;
+        Node<T> node = higher;
+        int height = leftIsHigher ? leftHeight : rightHeight;
+        while (node.isRed() || height > targetHeight) {
+            if (node.isBlack())
+                height--;
+            parent = node;
+            node = leftIsHigher ? node.right : node.left;
+        }
+
+        middle.color = Color.RED;
+        middle.parent = parent;
+        if (leftIsHigher) {
+            parent.right = middle;
+            adopt(middle, node, true);
+            adopt(middle, right, false);
+        } else {
+            parent.left = middle;
+            adopt(middle, left, true);
+            adopt(middle, node, false);
+        }
+
+        root = higher;
+        augmentPath(middle);
+        balanceInsertion1(middle);
+        return root;
+    }
+
+    /**
+     * Makes the root of the tree black, which is allowed for any root, and returns the black height of the tree
+     */
+
+    private int blackHeightOfRoot(Node<T> node) {
+        if (node == nil)
+            return 0;
+
+        node.color = Color.BLACK;
+        int height = 0;
+        for (Node<T> current = node; current != nil; current = current.left) {
+            if (current.isBlack())
+                height++;
+        }
+        return height;
+    }
+
+    private Node<T> detach(Node<T> node) {
+        if (node != nil)
+            node.parent = null;
+        return node;
+    }
+
+    private void adopt(Node<T> parent, Node<T> child, boolean left) {
+        if (left)
+            parent.left = child;
+        else
+            parent.right = child;
+
+        if (child != nil)
+            child.parent = parent;
+    }
+
     private void cutOf(Node<T> node) {
         if (node.isLeftChild())
             node.parent.left = nil;
@@ -606,13 +1345,126 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     }
 
     private Node<T> findNode(T data) {
-        Node<T> node = root;
-        while (node != nil && data.compareTo(node.data) != 0)
-            node = (data.compareTo(node.data) < 0) ? node.left : node.right;
+        Node<T> node = searchNodeOrNil(data);
+        if (node != nil)
+            policy.accessed(this, node);
+        return node;
+    }
+
+    private Node<T> searchNodeOrNil(T data) {
+        if (fingerSearch) {
+            Node<T> node = isEmpty() ? nil : searchNode(data);
+            return node != nil && data.compareTo(node.data) == 0 ? node : nil;
+        }
+
+        long prefix = prefix(data);
+        Node<T> node = isEmpty() ? nil : root;
+        while (node != nil) {
+            int comparison = compare(data, prefix, node);
+            if (comparison == 0)
+                break;
+
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Finds the node holding the data, or if there is none the node under which the data would be inserted,
+     * whose nextSmallest or nextLargest link then leads to the closest data on the other side. Starts from the
+     * finger and moves the finger to the node found. The tree must not be empty.
+     */
+
+    private Node<T> searchNode(T data) {
+        Node<T> node = searchStart(data);
+        Node<T> last = node;
+        while (node != nil) {
+            last = node;
+            int comparison = data.compareTo(node.data);
+            if (comparison == 0)
+                break;
+
+            node = comparison < 0 ? node.left : node.right;
+        }
+        finger = last;
+        return last;
+    }
+
+    /**
+     * Finds the node to start a search for the data from, the root unless finger search is on. With finger
+     * search the finger climbs until the data is known to be within the subtree of the node reached: when the
+     * data is less than a right child but greater than its parent it lies between the two, which is inside
+     * the subtree of the child, and the same goes the other way around for a left child.
+     */
+
+    private Node<T> searchStart(T data) {
+        if (!fingerSearch || finger == null)
+            return root;
 
+        Node<T> node = finger;
+        while (!node.isRoot()) {
+            int comparison = data.compareTo(node.data);
+            if (comparison == 0)
+                break;
+
+            if (comparison < 0 ? node.isRightChild() && data.compareTo(node.parent.data) > 0
+                    : node.isLeftChild() && data.compareTo(node.parent.data) < 0)
+                break;
+
+            node = node.parent;
+        }
         return node;
     }
 
+    private void moveFinger(Node<T> node) {
+        if (fingerSearch)
+            finger = node;
+    }
+
+    /**
+     * Finds the node with the greatest data less than or equal to the given data, or nil if there is none
+     */
+
+    private Node<T> findFloorNode(T data) {
+        long prefix = prefix(data);
+        Node<T> result = nil;
+        Node<T> node = isEmpty() ? nil : root;
+        while (node != nil) {
+            int comparison = compare(data, prefix, node);
+            if (comparison == 0)
+                return node;
+
+            if (comparison > 0) {
+                result = node; // the best candidate so far, look for a greater one to the right
+                node = node.right;
+            } else
+                node = node.left;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the node with the least data greater than or equal to the given data, or nil if there is none
+     */
+
+    private Node<T> findCeilingNode(T data) {
+        long prefix = prefix(data);
+        Node<T> result = nil;
+        Node<T> node = isEmpty() ? nil : root;
+        while (node != nil) {
+            int comparison = compare(data, prefix, node);
+            if (comparison == 0)
+                return node;
+
+            if (comparison < 0) {
+                result = node; // the best candidate so far, look for a smaller one to the left
+                node = node.left;
+            } else
+                node = node.right;
+        }
+        return result;
+    }
+
     private T findMin(Node<T> node) {
         return findMinNode(node).data;
     }
@@ -648,27 +1500,20 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     }
 
     /**
-     * Creates string of nodes by inorder traversal
+     * Creates string of nodes by inorder traversal, following the nextLargest links from the smallest node
+     * since a splay tree may be too deep to recurse through
      */
-    private void buildString(StringBuilder builder, Node<T> root) {
-
-        if (root.left != nil) {
-            buildString(builder, root.left);
-            builder.append(", ");
-        }
-        builder.append(root.toString());
-
-        if (root.right != nil) {
-            builder.append(", ");
-            buildString(builder, root.right);
-        }
+    private void buildString(StringBuilder builder, Node<T> first) {
+        builder.append(first.toString());
+        for (Node<T> node = first.nextLargest; node != nil; node = node.nextLargest)
+            builder.append(", ").append(node.toString());
     }
 
     /**
      * Handles rotation of a node by
      */
 
-    private void rightRotate(Node<T> oldRoot) {
+    void rightRotate(Node<T> oldRoot) {
         Node<T> newRoot = oldRoot.left;
 
         oldRoot.left = newRoot.right;
@@ -688,9 +1533,11 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
         // finally set the parent of the old root to the new root
         oldRoot.parent = newRoot;
 
+        augment(oldRoot);
+        augment(newRoot);
     }
 
-    private void leftRotate(Node<T> oldRoot) {
+    void leftRotate(Node<T> oldRoot) {
         Node<T> newRoot = oldRoot.right;
 
         // make the right child of the old root a left child of the new root
@@ -708,6 +1555,31 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
 
         // finally set the parent of the old root to the new root
         oldRoot.parent = newRoot;
+
+        augment(oldRoot);
+        augment(newRoot);
+    }
+
+    /**
+     * Updates the summary of a node if the tree has an augmentation
+     */
+
+    private void augment(Node<T> node) {
+        if (augmentation != null && node != nil)
+            augmentation.update(node);
+    }
+
+    /**
+     * Updates the summaries of a node and all nodes above it. Also called by the users of an augmentation
+     * after changing a field the summary depends on, like the count of a node.
+     */
+
+    void augmentPath(Node<T> node) {
+        if (augmentation == null)
+            return;
+
+        for (Node<T> current = node; current != null && current != nil; current = current.parent)
+            augmentation.update(current);
     }
 
 
@@ -726,15 +1598,42 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
     }
 
     private boolean lessThan(Node<T> node, Node<T> other) {
-        return node.data.compareTo(other.data) < 0;
+        return compare(node, other) < 0;
     }
 
     private boolean greaterThan(Node<T> node, Node<T> other) {
-        return node.data.compareTo(other.data) > 0;
+        return compare(node, other) > 0;
     }
 
     private boolean equals(Node<T> node, Node<T> other) {
-        return node.data.compareTo(other.data) == 0;
+        return compare(node, other) == 0;
+    }
+
+    private int compare(Node<T> node, Node<T> other) {
+        return compare(node.data, node.prefix, other);
+    }
+
+    /**
+     * Compares the data to the data of the node, by their prefixes first if there is a normalizer
+     *
+     * @param prefix the prefix of the data, ignored without a normalizer
+     */
+
+    private int compare(T data, long prefix, Node<T> node) {
+        if (normalizer != null && prefix != node.prefix)
+            return Long.compareUnsigned(prefix, node.prefix);
+
+        return data.compareTo(node.data);
+    }
+
+    private long prefix(T data) {
+        return normalizer == null ? 0 : normalizer.prefix(data);
+    }
+
+    private Node<T> newNode(T data, Node<T> left) {
+        Node<T> node = new Node<>(data, left, nil);
+        node.prefix = prefix(data);
+        return node;
     }
 
 
@@ -746,6 +1645,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
 
         private int expectedModCount = modCount;
         private boolean okToRemove;
+        private T lastReturned;
 
         RedBlackTreeIterator() {
             this(false);
@@ -759,6 +1659,11 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
                 current = descending ? findMaxNode(root) : findMinNode(root);
         }
 
+        RedBlackTreeIterator(Node<T> start, boolean descending) {
+            this.descending = descending;
+            current = start;
+        }
+
         @Override
         public boolean hasNext() {
             return current != nil;
@@ -772,6 +1677,7 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
                 throw new NoSuchElementException();
             T data = current.data;
             current = descending ? current.nextSmallest : current.nextLargest;
+            lastReturned = data;
             okToRemove = true;
 
             return data;
@@ -784,16 +1690,22 @@ public class RedBlackBinaryTree<T extends Comparable<? super T>> implements Iter
             if (!okToRemove)
                 throw new IllegalStateException();
 
-            RedBlackBinaryTree.this.remove(descending ? current.nextLargest.data : current.nextSmallest.data);
-
+            // a deletion may shift data between nodes, so the next node is looked up again by its data
+            T next = current.data;
+            RedBlackBinaryTree.this.remove(lastReturned);
+            current = next == null ? nil : findNode(next);
 
             expectedModCount++;
             okToRemove = false;
         }
     }
 
-    //only for JUNIT-tests
+    //only for JUNIT-tests and the classes walking the nodes of the tree
     Node<T> root() {
         return root;
     }
+
+    boolean isNil(Node<T> node) {
+        return node == nil;
+    }
 }
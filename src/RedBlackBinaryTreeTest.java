@@ -236,6 +236,420 @@ public class RedBlackBinaryTreeTest {
         }
     }
 
+    @Test
+    void testIterationAfterRandomAddAndRemove() {
+        Random rnd = new Random();
+
+        SortedSet<Integer> oracle = new TreeSet<>();
+        for (int n = 1; n <= 6; n++)
+            oracle.add(n);
+
+        for (int n = 0; n < 1000; n++) {
+            int toAdd = rnd.nextInt(100);
+            assertEquals(oracle.add(toAdd), tree.add(toAdd));
+            int toRemove = rnd.nextInt(100);
+            assertEquals(oracle.remove(toRemove), tree.remove(toRemove));
+
+            Iterator<Integer> i = tree.iterator();
+            for (Integer expected : oracle)
+                assertEquals(expected, i.next());
+            assertFalse(i.hasNext());
+
+            i = tree.descendingIterator();
+            for (Integer expected : ((TreeSet<Integer>) oracle).descendingSet())
+                assertEquals(expected, i.next());
+            assertFalse(i.hasNext());
+        }
+    }
+
+    @Test
+    void testRemoveOnDescendingIteratorAfterNodeWithTwoChildren() {
+        Iterator<Integer> i = tree.descendingIterator();
+        assertEquals(6, i.next());
+        assertEquals(5, i.next());
+        assertEquals(4, i.next());
+        i.remove(); // 4 is the root and has two children
+        assertEquals(3, i.next());
+        assertEquals(2, i.next());
+        assertEquals(1, i.next());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    void testLowerAndHigherOnEmptyTree() {
+        tree.clear();
+        assertNull(tree.lower(1));
+        assertNull(tree.higher(1));
+        assertFalse(tree.contains(1));
+    }
+
+    @Test
+    void testBuildFromSorted() {
+        for (int size = 0; size <= 64; size++) {
+            List<Integer> sorted = new ArrayList<>();
+            for (int n = 0; n < size; n++)
+                sorted.add(n * 2);
+
+            tree.buildFromSorted(sorted.iterator(), size);
+            assertEquals(size, tree.size());
+            verifyRedBlackRules(tree);
+
+            Iterator<Integer> i = tree.iterator();
+            for (Integer expected : sorted)
+                assertEquals(expected, i.next());
+            assertFalse(i.hasNext());
+
+            assertTrue(tree.add(1));
+            assertTrue(tree.add(-1));
+            assertEquals(size > 0, tree.remove(0));
+            verifyRedBlackRules(tree);
+        }
+    }
+
+    @Test
+    void testRemoveRange() {
+        assertEquals(3, tree.removeRange(2, 5));
+        assertEquals(3, tree.size());
+        assertEquals("[1, 5, 6]", iteratedElements(tree));
+        assertEquals(0, tree.removeRange(2, 5));
+        assertEquals(2, tree.removeRange(null, 6));
+        assertEquals(6, tree.first());
+        assertEquals(1, tree.removeRange(0, null));
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    void testRandomRemoveRange() {
+        Random rnd = new Random();
+
+        for (int n = 0; n < 500; n++) {
+            TreeSet<Integer> oracle = new TreeSet<>();
+            tree.clear();
+            int size = rnd.nextInt(300);
+            for (int m = 0; m < size; m++) {
+                int toAdd = rnd.nextInt(1000);
+                assertEquals(oracle.add(toAdd), tree.add(toAdd));
+            }
+            int from = rnd.nextInt(1100) - 50;
+            int to = from + rnd.nextInt(600);
+
+            SortedSet<Integer> range = oracle.subSet(from, to);
+            int expected = range.size();
+            range.clear();
+
+            assertEquals(expected, tree.removeRange(from, to));
+            assertEquals(oracle.size(), tree.size());
+            assertEquals(oracle.toString(), iteratedElements(tree));
+            verifyRedBlackRules(tree);
+
+            List<Integer> descending = new ArrayList<>();
+            tree.descendingIterator().forEachRemaining(descending::add);
+            assertEquals(new ArrayList<>(oracle.descendingSet()), descending);
+
+            for (int m = 0; m < 20; m++) {
+                int data = rnd.nextInt(1000);
+                assertEquals(oracle.add(data), tree.add(data));
+                data = rnd.nextInt(1000);
+                assertEquals(oracle.remove(data), tree.remove(data));
+            }
+            assertEquals(oracle.toString(), iteratedElements(tree));
+        }
+    }
+
+    @Test
+    void testRandomAvlPolicy() {
+        testRandomRankPolicy(BalancingPolicy.AVL);
+    }
+
+    @Test
+    void testRandomWavlPolicy() {
+        testRandomRankPolicy(BalancingPolicy.WAVL);
+    }
+
+    void testRandomRankPolicy(BalancingPolicy policy) {
+        Random rnd = new Random();
+        RedBlackBinaryTree<Integer> tree = new RedBlackBinaryTree<>(policy);
+        TreeSet<Integer> oracle = new TreeSet<>();
+
+        for (int n = 0; n < 3000; n++) {
+            int data = rnd.nextInt(500);
+            assertEquals(oracle.add(data), tree.add(data));
+            // remove more often in the second half so that the tree also shrinks
+            data = rnd.nextInt(500);
+            if (n < 1500 || rnd.nextBoolean())
+                assertEquals(oracle.remove(data), tree.remove(data));
+            data = rnd.nextInt(500);
+            assertEquals(oracle.remove(data), tree.remove(data));
+
+            assertEquals(oracle.size(), tree.size());
+            verifyRankRules(tree, policy);
+        }
+        assertEquals(oracle.toString(), iteratedElements(tree));
+
+        int from = rnd.nextInt(250);
+        int expected = oracle.subSet(from, from + 100).size();
+        oracle.subSet(from, from + 100).clear();
+        assertEquals(expected, tree.removeRange(from, from + 100));
+        assertEquals(oracle.toString(), iteratedElements(tree));
+        verifyRankRules(tree, policy);
+
+        List<Integer> sorted = new ArrayList<>();
+        for (int n = 0; n < 100; n++)
+            sorted.add(n * 2);
+        tree.buildFromSorted(sorted.iterator(), sorted.size());
+        verifyRankRules(tree, policy);
+        for (int n = 0; n < 200; n++) {
+            assertEquals(n % 2 != 0, tree.add(n));
+            verifyRankRules(tree, policy);
+        }
+        for (int n = 0; n < 200; n += 3) {
+            assertTrue(tree.remove(n));
+            verifyRankRules(tree, policy);
+        }
+    }
+
+    @Test
+    void testRandomSplayPolicy() {
+        Random rnd = new Random();
+        RedBlackBinaryTree<Integer> tree = new RedBlackBinaryTree<>(BalancingPolicy.SPLAY);
+        TreeSet<Integer> oracle = new TreeSet<>();
+
+        for (int n = 0; n < 2000; n++) {
+            int data = rnd.nextInt(300);
+            assertEquals(oracle.add(data), tree.add(data));
+            assertEquals(data, tree.root().data);
+            data = rnd.nextInt(300);
+            assertEquals(oracle.remove(data), tree.remove(data));
+            data = rnd.nextInt(300);
+            if (oracle.contains(data)) {
+                assertTrue(tree.contains(data));
+                assertEquals(data, tree.root().data);
+            }
+            assertEquals(oracle.size(), tree.size());
+            verifySearchTree(tree.root(), null, null);
+        }
+        assertEquals(oracle.toString(), iteratedElements(tree));
+        assertEquals(oracle.first(), tree.first());
+        assertEquals(oracle.last(), tree.last());
+
+        int from = rnd.nextInt(150);
+        int expected = oracle.subSet(from, from + 100).size();
+        oracle.subSet(from, from + 100).clear();
+        assertEquals(expected, tree.removeRange(from, from + 100));
+        assertEquals(oracle.toString(), iteratedElements(tree));
+        verifySearchTree(tree.root(), null, null);
+    }
+
+    @Test
+    void testSplayLimit() {
+        RedBlackBinaryTree<Integer> tree = new RedBlackBinaryTree<>(BalancingPolicy.SPLAY);
+        for (int n = 0; n < 100; n++)
+            tree.add(n); // every element is splayed to the root, leaving a path of left children
+
+        assertEquals(99, depth(tree, 0));
+        tree.setSplayLimit(10);
+        assertTrue(tree.contains(0));
+        assertEquals(89, depth(tree, 0));
+        assertTrue(tree.contains(0));
+        assertEquals(79, depth(tree, 0));
+        verifySearchTree(tree.root(), null, null);
+
+        assertThrows(IllegalArgumentException.class, () -> tree.setSplayLimit(0));
+    }
+
+    int depth(RedBlackBinaryTree<Integer> tree, int data) {
+        // descends from the root itself, since a search through the tree would splay the node
+        int depth = 0;
+        for (RedBlackBinaryTree.Node<Integer> node = tree.root(); node.data != data; depth++)
+            node = data < node.data ? node.left : node.right;
+        return depth;
+    }
+
+    /**
+     * Checks that the nodes are ordered and linked to their parents, the only rules of a splay tree
+     */
+
+    void verifySearchTree(RedBlackBinaryTree.Node<Integer> node, Integer low, Integer high) {
+        if (node == null || node.data == null)
+            return;
+
+        assertTrue(low == null || node.data > low);
+        assertTrue(high == null || node.data < high);
+        for (RedBlackBinaryTree.Node<Integer> child : List.of(node.left, node.right))
+            assertTrue(child.data == null || child.parent == node);
+
+        verifySearchTree(node.left, low, node.data);
+        verifySearchTree(node.right, node.data, high);
+    }
+
+    void verifyRankRules(RedBlackBinaryTree<Integer> tree, BalancingPolicy policy) {
+        if (tree.root() != null)
+            assertDoesNotThrow(() -> verifyRankRules(tree.root(), policy));
+    }
+
+    /**
+     * Checks the rank of every node, for AVL that it is the height with children differing by at most one
+     * and for WAVL that every rank difference is 1 or 2 and every leaf has rank 0
+     */
+
+    void verifyRankRules(RedBlackBinaryTree.Node<Integer> node, BalancingPolicy policy) throws IllegalStateException {
+        if (node.data == null)
+            return;
+
+        for (RedBlackBinaryTree.Node<Integer> child : List.of(node.left, node.right)) {
+            if (child.data != null && child.parent != node)
+                throw new IllegalStateException("Wrong parent of " + child.data);
+            int difference = node.rank - (child.data == null ? -1 : child.rank);
+            if (difference != 1 && difference != 2)
+                throw new IllegalStateException("Rank difference " + difference + " under " + node.data);
+        }
+        if (node.left.data == null && node.right.data == null && node.rank != 0)
+            throw new IllegalStateException("Leaf " + node.data + " has rank " + node.rank);
+
+        if (policy == BalancingPolicy.AVL) {
+            int left = node.left.data == null ? -1 : node.left.rank;
+            int right = node.right.data == null ? -1 : node.right.rank;
+            if (node.rank != Math.max(left, right) + 1 || Math.abs(left - right) > 1)
+                throw new IllegalStateException("Not an AVL node: " + node.data);
+        }
+        verifyRankRules(node.left, policy);
+        verifyRankRules(node.right, policy);
+    }
+
+    String iteratedElements(RedBlackBinaryTree<Integer> tree) {
+        List<Integer> elements = new ArrayList<>();
+        tree.iterator().forEachRemaining(elements::add);
+        return elements.toString();
+    }
+
+    @Test
+    void testRandomFingerSearch() {
+        Random rnd = new Random();
+        tree.setFingerSearch(true);
+
+        TreeSet<Integer> oracle = new TreeSet<>();
+        for (int n = 1; n <= 6; n++)
+            oracle.add(n);
+
+        int position = 0;
+        for (int n = 0; n < 5000; n++) {
+            // mostly short steps like a nearly sorted stream, sometimes a jump
+            position = rnd.nextInt(10) == 0 ? rnd.nextInt(1000) : Math.max(0, position + rnd.nextInt(7) - 2);
+
+            assertEquals(oracle.add(position), tree.add(position));
+            int near = position + rnd.nextInt(5) - 2;
+            assertEquals(oracle.contains(near), tree.contains(near));
+            assertEquals(oracle.lower(near), tree.lower(near));
+            assertEquals(oracle.higher(near), tree.higher(near));
+            if (rnd.nextInt(3) == 0)
+                assertEquals(oracle.remove(near), tree.remove(near));
+            if (rnd.nextInt(500) == 0) {
+                SortedSet<Integer> range = oracle.subSet(near, near + 20);
+                assertEquals(range.size(), tree.removeRange(near, near + 20));
+                range.clear();
+            }
+        }
+        assertEquals(oracle.size(), tree.size());
+        assertEquals(oracle.toString(), iteratedElements(tree));
+    }
+
+    @Test
+    void testRandomBatchProbes() {
+        Random rnd = new Random();
+
+        for (int n = 0; n < 200; n++) {
+            RedBlackBinaryTree<Integer> tree = new RedBlackBinaryTree<>();
+            TreeSet<Integer> oracle = new TreeSet<>();
+            int size = rnd.nextInt(300);
+            for (int i = 0; i < size; i++) {
+                int element = rnd.nextInt(1000);
+                oracle.add(element);
+                tree.add(element);
+            }
+
+            Integer[] probes = new Integer[rnd.nextInt(100)];
+            for (int i = 0; i < probes.length; i++)
+                probes[i] = rnd.nextInt(1100) - 50;
+            Arrays.sort(probes);
+
+            boolean[] contained = new boolean[probes.length];
+            Integer[] lower = new Integer[probes.length];
+            Integer[] higher = new Integer[probes.length];
+            int found = tree.containsAll(probes, contained);
+            tree.lowerAll(probes, lower);
+            tree.higherAll(probes, higher);
+
+            int expectedFound = 0;
+            for (int i = 0; i < probes.length; i++) {
+                assertEquals(oracle.contains(probes[i]), contained[i]);
+                assertEquals(oracle.lower(probes[i]), lower[i]);
+                assertEquals(oracle.higher(probes[i]), higher[i]);
+                if (contained[i])
+                    expectedFound++;
+            }
+            assertEquals(expectedFound, found);
+        }
+    }
+
+    @Test
+    void testBatchProbesArguments() {
+        assertThrows(IllegalArgumentException.class, () -> tree.containsAll(new Integer[]{2, 1}, new boolean[2]));
+        assertThrows(IllegalArgumentException.class, () -> tree.lowerAll(new Integer[]{1, 2}, new Integer[1]));
+        assertThrows(NullPointerException.class, () -> tree.higherAll(new Integer[]{1, null}, new Integer[2]));
+    }
+
+    @Test
+    void testStringNormalizerPreservesOrder() {
+        Random rnd = new Random();
+        char[] alphabet = {'a', 'b', 'z', '\u0000', '\u00e9', '\u07ff', '\u0800', '\ud83d', '\ude00', '\uffff'};
+
+        for (int n = 0; n < 100000; n++) {
+            String a = randomString(rnd, alphabet);
+            String b = randomString(rnd, alphabet);
+            int prefixes = Long.compareUnsigned(KeyNormalizer.STRING.prefix(a), KeyNormalizer.STRING.prefix(b));
+            if (prefixes != 0)
+                assertEquals(Integer.signum(prefixes), Integer.signum(a.compareTo(b)), a + " " + b);
+        }
+        assertEquals(0, KeyNormalizer.STRING.prefix(""));
+    }
+
+    String randomString(Random rnd, char[] alphabet) {
+        char[] chars = new char[rnd.nextInt(12)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = alphabet[rnd.nextInt(alphabet.length)];
+        return new String(chars);
+    }
+
+    @Test
+    void testRandomWithKeyNormalizer() {
+        Random rnd = new Random();
+        RedBlackBinaryTree<String> strings = new RedBlackBinaryTree<>();
+        TreeSet<String> oracle = new TreeSet<>();
+        for (int n = 0; n < 100; n++) {
+            String s = "https://example.com/" + rnd.nextInt(1000);
+            strings.add(s);
+            oracle.add(s);
+        }
+        strings.setKeyNormalizer(KeyNormalizer.STRING); // computes the prefixes of the elements already there
+
+        for (int n = 0; n < 5000; n++) {
+            String s = (rnd.nextBoolean() ? "https://example.com/" : "/") + rnd.nextInt(1000);
+            switch (rnd.nextInt(3)) {
+                case 0 -> assertEquals(oracle.add(s), strings.add(s));
+                case 1 -> assertEquals(oracle.remove(s), strings.remove(s));
+                default -> assertEquals(oracle.contains(s), strings.contains(s));
+            }
+            assertEquals(oracle.floor(s), strings.floor(s));
+            assertEquals(oracle.ceiling(s), strings.ceiling(s));
+            assertEquals(oracle.lower(s), strings.lower(s));
+            assertEquals(oracle.higher(s), strings.higher(s));
+        }
+        assertEquals(oracle.size(), strings.size());
+        List<String> elements = new ArrayList<>();
+        strings.iterator().forEachRemaining(elements::add);
+        assertEquals(new ArrayList<>(oracle), elements);
+    }
+
     @Test
     void testFirst() {
         assertEquals(1, tree.first());
@@ -0,0 +1,487 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Thread safe sorted set that splits the key space into a number of range shards, each one being its own
+ * Red-Black Binary Tree guarded by its own lock. Point operations only lock the shard owning the key, so
+ * writers on different key ranges can proceed in parallel.
+ * <p>
+ * Shard i holds the keys k where bounds[i - 1] <= k < bounds[i]. The bounds are picked from the data itself
+ * and are moved whenever a shard grows much larger than the average of the other shards.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class ShardedTreeSet<T extends Comparable<? super T>> implements Iterable<T> {
+
+
+    /**
+     * Inner class representing a shard, a tree and the lock guarding it
+     */
+    private static class Shard<T extends Comparable<? super T>> {
+
+        final RedBlackBinaryTree<T> tree = new RedBlackBinaryTree<>();
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+    }
+
+
+    private static final int SKEW_FACTOR = 4; // a shard this many times larger than the other shards is skewed
+    private static final int SKEW_CHECK_INTERVAL = 1024; // number of elements between each skew check of a shard
+
+    // held for reading by every operation and for writing when the shard bounds are moved
+    private final ReadWriteLock layoutLock = new ReentrantReadWriteLock();
+
+    private final Shard<T>[] shards;
+    private T[] bounds; // the lowest key of every shard but the first, null until the first rebalancing
+
+
+    /**
+     * Creates an empty set with the given number of shards. The shard bounds are picked when enough elements
+     * have been added for the first shard to be considered skewed.
+     *
+     * @param shardCount the number of shards
+     */
+
+    public ShardedTreeSet(int shardCount) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+
+        shards = newShards(shardCount);
+    }
+
+    /**
+     * Creates an empty set with shards split on the given keys, giving one more shard than the number of keys.
+     *
+     * @param splitKeys the lowest key of every shard but the first, in strictly ascending order
+     */
+
+    public ShardedTreeSet(List<T> splitKeys) {
+        shards = newShards(splitKeys.size() + 1);
+        bounds = toBounds(splitKeys);
+
+        for (int n = 1; n < bounds.length; n++) {
+            if (bounds[n - 1].compareTo(bounds[n]) >= 0)
+                throw new IllegalArgumentException("Split keys must be strictly ascending");
+        }
+    }
+
+
+    public boolean add(T data) {
+        if (data == null)
+            return false;
+
+        Shard<T> shard;
+        boolean added;
+        boolean skewed;
+
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            shard = shards[shardIndex(data)];
+            Lock lock = shard.lock.writeLock();
+            lock.lock();
+            try {
+                added = shard.tree.add(data);
+                skewed = added && shard.tree.size() % SKEW_CHECK_INTERVAL == 0 && isSkewed(shard);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            layout.unlock();
+        }
+
+        // the layout lock can not be upgraded, so the rebalancing is done after it is released
+        if (skewed)
+            rebalance(shard);
+
+        return added;
+    }
+
+    public boolean remove(T data) {
+        if (data == null)
+            return false;
+
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            Shard<T> shard = shards[shardIndex(data)];
+            Lock lock = shard.lock.writeLock();
+            lock.lock();
+            try {
+                return shard.tree.remove(data);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    public boolean contains(T data) {
+        if (data == null)
+            return false;
+
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            Shard<T> shard = shards[shardIndex(data)];
+            Lock lock = shard.lock.readLock();
+            lock.lock();
+            try {
+                return shard.tree.contains(data);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    /**
+     * Returns the greatest element strictly less than the given one. If the shard owning the element has no
+     * lower element the search continues with the last element of the closest non-empty shard below it.
+     */
+
+    public T lower(T data) {
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            int index = shardIndex(data);
+            T result = lowerOrHigherInShard(shards[index], data, false);
+
+            while (result == null && --index >= 0)
+                result = firstOrLastInShard(shards[index], false);
+
+            return result;
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    /**
+     * Returns the least element strictly greater than the given one. If the shard owning the element has no
+     * higher element the search continues with the first element of the closest non-empty shard above it.
+     */
+
+    public T higher(T data) {
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            int index = shardIndex(data);
+            T result = lowerOrHigherInShard(shards[index], data, true);
+
+            while (result == null && ++index < shards.length)
+                result = firstOrLastInShard(shards[index], true);
+
+            return result;
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    public T first() {
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            T result = null;
+            for (int n = 0; result == null && n < shards.length; n++)
+                result = firstOrLastInShard(shards[n], true);
+
+            return result;
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    public T last() {
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            T result = null;
+            for (int n = shards.length - 1; result == null && n >= 0; n--)
+                result = firstOrLastInShard(shards[n], false);
+
+            return result;
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of elements. Shards are counted one at a time, so the result is only exact when no
+     * other thread is modifying the set.
+     */
+
+    public int size() {
+        Lock layout = layoutLock.readLock();
+        layout.lock();
+        try {
+            int size = 0;
+            for (Shard<T> shard : shards)
+                size += sizeOfShard(shard);
+
+            return size;
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return first() == null;
+    }
+
+    public void clear() {
+        Lock layout = layoutLock.writeLock();
+        layout.lock();
+        try {
+            for (Shard<T> shard : shards)
+                shard.tree.clear();
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns a weakly consistent iterator in ascending order. The elements of one shard at a time are copied
+     * under that shards lock, so the iterator never throws ConcurrentModificationException but might miss
+     * modifications made to shards after they have been copied. Removal is not supported.
+     */
+
+    public Iterator<T> iterator() {
+        return new ShardIterator();
+    }
+
+    /**
+     * Moves the shard bounds so that every shard holds about the same number of elements. Called automatically
+     * when a shard is detected to be skewed but can also be called directly, for example after a bulk load.
+     * The shards are rebuilt from their elements in ascending order in O(n), under the layout lock.
+     */
+
+    public void rebalance() {
+        rebalance(null);
+    }
+
+    /**
+     * Rebalances the shards, or if a skewed shard is given only does so when the shard still is skewed since
+     * another thread might have rebalanced the shards before the layout lock was acquired.
+     */
+
+    private void rebalance(Shard<T> skewed) {
+        Lock layout = layoutLock.writeLock();
+        layout.lock();
+        try {
+            if (skewed != null && !isSkewed(skewed))
+                return;
+
+            List<T> elements = new ArrayList<>();
+            for (Shard<T> shard : shards) {
+                for (T data : shard.tree)
+                    elements.add(data);
+            }
+
+            if (elements.size() < shards.length)
+                return;
+
+            // the shards are in key order, so the elements are sorted and every equally sized slice becomes a
+            // shard, bounded by its lowest key
+            List<T> splitKeys = new ArrayList<>(shards.length - 1);
+            int start = 0;
+            for (int n = 0; n < shards.length; n++) {
+                int end = (int) ((long) elements.size() * (n + 1) / shards.length);
+                if (n > 0)
+                    splitKeys.add(elements.get(start));
+
+                shards[n].tree.buildFromSorted(elements.subList(start, end).iterator(), end - start);
+                start = end;
+            }
+            bounds = toBounds(splitKeys);
+        } finally {
+            layout.unlock();
+        }
+    }
+
+    /**
+     * Finds the index of the shard owning the data by binary search over the shard bounds.
+     * The layout lock must be held.
+     */
+
+    private int shardIndex(T data) {
+        if (bounds == null)
+            return 0;
+
+        int low = 0;
+        int high = bounds.length;
+
+        // find the number of bounds less than or equal to the data
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (data.compareTo(bounds[middle]) >= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Checks if the shard is more than SKEW_FACTOR times larger than the average of the other shards, which
+     * unlike the average of every shard, the shard included, it can exceed with any number of shards. Before
+     * the first rebalancing every element is in the first shard, which is then always considered skewed.
+     * The other shards are read without their locks since the result is only a hint.
+     */
+
+    private boolean isSkewed(Shard<T> shard) {
+        if (shards.length == 1)
+            return false;
+
+        if (bounds == null)
+            return true;
+
+        long others = 0;
+        for (Shard<T> other : shards) {
+            if (other != shard)
+                others += other.tree.size();
+        }
+        return (long) shard.tree.size() * (shards.length - 1) > others * SKEW_FACTOR;
+    }
+
+    private T lowerOrHigherInShard(Shard<T> shard, T data, boolean higher) {
+        Lock lock = shard.lock.readLock();
+        lock.lock();
+        try {
+            return higher ? shard.tree.higher(data) : shard.tree.lower(data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private T firstOrLastInShard(Shard<T> shard, boolean first) {
+        Lock lock = shard.lock.readLock();
+        lock.lock();
+        try {
+            if (shard.tree.isEmpty())
+                return null;
+
+            return first ? shard.tree.first() : shard.tree.last();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int sizeOfShard(Shard<T> shard) {
+        Lock lock = shard.lock.readLock();
+        lock.lock();
+        try {
+            return shard.tree.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<? super T>> Shard<T>[] newShards(int shardCount) {
+        Shard<T>[] shards = (Shard<T>[]) new Shard<?>[shardCount];
+        for (int n = 0; n < shardCount; n++)
+            shards[n] = new Shard<>();
+
+        return shards;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<? super T>> T[] toBounds(List<T> splitKeys) {
+        return (T[]) splitKeys.toArray(new Comparable<?>[0]);
+    }
+
+
+    private class ShardIterator implements Iterator<T> {
+
+        private int shardIndex;
+        private T lastCopied; // the greatest element copied so far, used to skip elements moved by a rebalancing
+
+        private Object[] buffer = new Object[0];
+        private int position;
+
+        @Override
+        public boolean hasNext() {
+            while (position == buffer.length && shardIndex < shards.length)
+                copyNextShard();
+
+            return position < buffer.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return (T) buffer[position++];
+        }
+
+        private void copyNextShard() {
+            Lock layout = layoutLock.readLock();
+            layout.lock();
+            try {
+                // continue from the shard owning the next element in case the bounds have moved
+                if (lastCopied != null)
+                    shardIndex = Math.max(shardIndex, shardIndex(lastCopied));
+
+                Shard<T> shard = shards[shardIndex++];
+                Lock lock = shard.lock.readLock();
+                lock.lock();
+                try {
+                    List<T> elements = new ArrayList<>(shard.tree.size());
+                    for (T data : shard.tree) {
+                        if (lastCopied == null || data.compareTo(lastCopied) > 0)
+                            elements.add(data);
+                    }
+                    buffer = elements.toArray();
+                    position = 0;
+
+                    if (!elements.isEmpty())
+                        lastCopied = elements.get(elements.size() - 1);
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                layout.unlock();
+            }
+        }
+    }
+
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        Iterator<T> i = iterator();
+        while (i.hasNext()) {
+            builder.append(i.next());
+            if (i.hasNext())
+                builder.append(", ");
+        }
+        return builder.append("]").toString();
+    }
+
+    //only for JUNIT-tests
+    List<T> bounds() {
+        return bounds == null ? null : Arrays.asList(bounds);
+    }
+
+    //only for JUNIT-tests
+    List<Integer> shardSizes() {
+        List<Integer> sizes = new ArrayList<>(shards.length);
+        for (Shard<T> shard : shards)
+            sizes.add(sizeOfShard(shard));
+        return sizes;
+    }
+}
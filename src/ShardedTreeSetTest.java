@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class ShardedTreeSetTest {
+
+    private final ShardedTreeSet<Integer> set = new ShardedTreeSet<>(List.of(10, 20, 30));
+
+
+    @BeforeEach
+    void setUp() {
+        for (int n = 5; n <= 35; n += 5)
+            assertTrue(set.add(n));
+    }
+
+    @Test
+    void testAddAndContains() {
+        assertEquals(7, set.size());
+        assertFalse(set.add(20));
+        assertTrue(set.contains(30));
+        assertFalse(set.contains(31));
+    }
+
+    @Test
+    void testLowerAndHigherAcrossShards() {
+        assertTrue(set.remove(15));
+        assertTrue(set.remove(20));
+        assertEquals(10, set.lower(25));
+        assertEquals(25, set.higher(10));
+        assertNull(set.lower(5));
+        assertNull(set.higher(35));
+    }
+
+    @Test
+    void testFirstAndLast() {
+        assertTrue(set.remove(5));
+        assertTrue(set.remove(35));
+        assertEquals(10, set.first());
+        assertEquals(30, set.last());
+        set.clear();
+        assertNull(set.first());
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    void testIteration() {
+        assertEquals("[5, 10, 15, 20, 25, 30, 35]", set.toString());
+    }
+
+    @Test
+    void testRebalanceSkewedShard() {
+        ShardedTreeSet<Integer> skewed = new ShardedTreeSet<>(4);
+        SortedSet<Integer> oracle = new TreeSet<>();
+        for (int n = 0; n < 10000; n++) {
+            skewed.add(n);
+            oracle.add(n);
+        }
+        assertNotNull(skewed.bounds());
+        assertEquals(3, skewed.bounds().size());
+        assertEquals(oracle.size(), skewed.size());
+
+        Iterator<Integer> i = skewed.iterator();
+        for (Integer expected : oracle)
+            assertEquals(expected, i.next());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    void testShardsStayBalancedAfterFirstRebalance() {
+        for (int shardCount : new int[]{2, 4, 8}) {
+            ShardedTreeSet<Integer> growing = new ShardedTreeSet<>(shardCount);
+            for (int n = 0; n < 100000; n++)
+                growing.add(n); // every element lands in the last shard once the first bounds are set
+
+            List<Integer> sizes = growing.shardSizes();
+            assertEquals(100000, growing.size());
+            assertTrue(growing.bounds().get(0) > 1024, "bounds never moved: " + growing.bounds());
+
+            // no shard is more than 4 times larger than the average of the others, give or take one skew check
+            for (int size : sizes) {
+                long others = 100000 - size;
+                assertTrue(size * (shardCount - 1) <= 4 * others + 1024L * (shardCount - 1), "sizes " + sizes);
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentWritersOnDifferentShards() throws InterruptedException {
+        set.clear();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t * 10;
+            threads[t] = new Thread(() -> {
+                for (int n = 0; n < 1000; n++)
+                    set.add(offset + n % 10);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(40, set.size());
+        assertEquals(0, set.first());
+        assertEquals(39, set.last());
+    }
+}
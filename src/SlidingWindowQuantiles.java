@@ -0,0 +1,183 @@
+/**
+ * Quantiles of a sliding window of samples on the Red-Black Binary Tree. Equal samples share a node holding
+ * the number of occurrences, and every node keeps the number of samples in its subtree, kept up to date by an
+ * augmentation of the tree. Pushing and evicting a sample and finding the sample at any rank, and so any
+ * quantile, then take O(log n) instead of sorting the window.
+ * <p>
+ * The window is moved by the caller, who pushes every new sample and evicts every sample leaving the window,
+ * which suits windows of a fixed number of samples as well as windows of a fixed time.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public class SlidingWindowQuantiles<T extends Comparable<? super T>> {
+
+    private final RedBlackBinaryTree<T> tree = new RedBlackBinaryTree<>(SlidingWindowQuantiles::updateSize);
+    private int size = 0; // number of samples, counting every occurrence
+
+
+
+
+    /**
+     * Adds a sample to the window
+     */
+
+    public void push(T sample) {
+        if (sample == null)
+            throw new NullPointerException();
+
+        int distinct = tree.size();
+        RedBlackBinaryTree.Node<T> node = tree.insert(sample);
+        if (tree.size() == distinct) {
+            node.count = Math.addExact(node.count, 1);
+            tree.augmentPath(node);
+        }
+        size++;
+    }
+
+
+    /**
+     * Removes one occurrence of a sample from the window
+     *
+     * @return false if the sample is not in the window
+     */
+
+    public boolean evict(T sample) {
+        RedBlackBinaryTree.Node<T> node = tree.getNode(sample);
+        if (node == null)
+            return false;
+
+        if (node.count > 1) {
+            node.count--;
+            tree.augmentPath(node);
+        } else
+            tree.delete(node);
+
+        size--;
+        return true;
+    }
+
+
+    /**
+     * Returns the sample at the quantile by the nearest rank method, the least sample with at least the share
+     * q of the samples less than or equal to it. quantile(0.5) is the median, quantile(0) the least sample and
+     * quantile(1) the greatest.
+     *
+     * @param q the quantile, between 0 and 1
+     * @return the sample, or null if the window is empty
+     */
+
+    public T quantile(double q) {
+        if (!(q >= 0 && q <= 1))
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        if (size == 0)
+            return null;
+
+        long rank = (long) Math.ceil(q * size);
+        return select((int) Math.max(rank - 1, 0));
+    }
+
+
+    public T median() {
+        return quantile(0.5);
+    }
+
+
+    /**
+     * Returns the sample at the index when the window is sorted in ascending order, counting every occurrence
+     *
+     * @throws IndexOutOfBoundsException if the index is not within the window
+     */
+
+    public T select(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size + " samples");
+
+        RedBlackBinaryTree.Node<T> node = tree.root();
+        while (true) {
+            int left = size(node.left);
+            if (index < left)
+                node = node.left;
+            else if (index < left + node.count)
+                return node.data;
+            else {
+                index -= left + node.count;
+                node = node.right;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of samples less than the given sample
+     */
+
+    public int rank(T sample) {
+        int rank = 0;
+        RedBlackBinaryTree.Node<T> node = tree.isEmpty() ? null : tree.root();
+        while (node != null && !tree.isNil(node)) {
+            int comparison = sample.compareTo(node.data);
+            if (comparison <= 0)
+                node = node.left;
+            else {
+                rank += size(node.left) + node.count;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+
+    /**
+     * Returns the number of occurrences of the sample in the window
+     */
+
+    public int count(T sample) {
+        RedBlackBinaryTree.Node<T> node = tree.getNode(sample);
+        return node == null ? 0 : node.count;
+    }
+
+
+    /**
+     * Returns the number of samples in the window, counting every occurrence
+     */
+
+    public int size() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    public T min() {
+        return tree.isEmpty() ? null : tree.first();
+    }
+
+
+    public T max() {
+        return tree.isEmpty() ? null : tree.last();
+    }
+
+
+    public void clear() {
+        tree.clear();
+        size = 0;
+    }
+
+
+    private static int size(RedBlackBinaryTree.Node<?> node) {
+        return node.summary == null ? 0 : (Integer) node.summary; // the summary of nil is always null
+    }
+
+    /**
+     * Sets the summary of the node to the number of samples in its subtree
+     */
+
+    private static <T> void updateSize(RedBlackBinaryTree.Node<T> node) {
+        node.summary = size(node.left) + node.count + size(node.right);
+    }
+}
@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+
+/**
+ * @author August Johnson Palm
+ * @version JUnit 5
+ */
+
+
+
+public class SlidingWindowQuantilesTest {
+
+    private final SlidingWindowQuantiles<Integer> window = new SlidingWindowQuantiles<>();
+
+
+    @Test
+    void testQuantiles() {
+        for (int n = 1; n <= 100; n++)
+            window.push(n);
+
+        assertEquals(50, window.median());
+        assertEquals(1, window.quantile(0));
+        assertEquals(99, window.quantile(0.99));
+        assertEquals(100, window.quantile(1));
+        assertEquals(10, window.rank(11));
+        assertEquals(1, window.min());
+        assertEquals(100, window.max());
+        assertThrows(IllegalArgumentException.class, () -> window.quantile(1.5));
+    }
+
+    @Test
+    void testDuplicates() {
+        window.push(5);
+        window.push(5);
+        window.push(5);
+        window.push(1);
+        assertEquals(4, window.size());
+        assertEquals(3, window.count(5));
+        assertEquals(5, window.median());
+        assertEquals(1, window.select(0));
+        assertEquals(5, window.select(3));
+
+        assertTrue(window.evict(5));
+        assertTrue(window.evict(5));
+        assertEquals(1, window.median());
+        assertEquals(1, window.count(5));
+        assertFalse(window.evict(7));
+    }
+
+    @Test
+    void testEmpty() {
+        assertNull(window.median());
+        assertNull(window.min());
+        assertEquals(0, window.rank(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> window.select(0));
+    }
+
+    @Test
+    void testRandomSlidingWindow() {
+        Random rnd = new Random();
+        ArrayDeque<Integer> samples = new ArrayDeque<>();
+
+        for (int n = 0; n < 20000; n++) {
+            int sample = rnd.nextInt(500); // plenty of duplicates
+            window.push(sample);
+            samples.addLast(sample);
+            if (samples.size() > 300)
+                assertTrue(window.evict(samples.removeFirst()));
+
+            if (n % 50 == 0) {
+                List<Integer> sorted = new ArrayList<>(samples);
+                Collections.sort(sorted);
+                assertEquals(sorted.size(), window.size());
+                for (double q : new double[]{0, 0.25, 0.5, 0.9, 0.99, 1})
+                    assertEquals(sorted.get(Math.max((int) Math.ceil(q * sorted.size()) - 1, 0)), window.quantile(q));
+
+                int probe = rnd.nextInt(500);
+                assertEquals((int) sorted.stream().filter(s -> s < probe).count(), window.rank(probe));
+            }
+        }
+    }
+}
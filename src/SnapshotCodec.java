@@ -0,0 +1,140 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Encodes the elements of a snapshot. Elements are written in ascending order and every element but the first
+ * one in a block is given the element written before it, so codecs can store the difference between the two
+ * instead of the whole element.
+ *
+ * @author August Johnson Palm
+ */
+
+
+public interface SnapshotCodec<T> {
+
+
+    /**
+     * Writes an element
+     *
+     * @param previous the element written before in the same block or null if it is the first one
+     * @param data     the element to be written
+     * @param out      the block being written
+     */
+
+    void write(T previous, T data, DataOutput out) throws IOException;
+
+    /**
+     * Reads an element
+     *
+     * @param previous the element read before in the same block or null if it is the first one
+     * @param in       the block being read
+     * @return the element
+     */
+
+    T read(T previous, DataInput in) throws IOException;
+
+
+    /**
+     * Writes the first element as a zigzag encoded varint and every other as a varint of the distance to
+     * the previous element
+     */
+    SnapshotCodec<Long> LONG = new SnapshotCodec<>() {
+
+        @Override
+        public void write(Long previous, Long data, DataOutput out) throws IOException {
+            if (previous == null)
+                writeVarLong((data << 1) ^ (data >> 63), out);
+            else
+                writeVarLong(data - previous, out); // the distance overflows into an unsigned long if it has to
+        }
+
+        @Override
+        public Long read(Long previous, DataInput in) throws IOException {
+            long value = readVarLong(in);
+            if (previous == null)
+                return (value >>> 1) ^ -(value & 1);
+
+            return previous + value;
+        }
+    };
+
+    /**
+     * Same as LONG but for integers
+     */
+    SnapshotCodec<Integer> INTEGER = new SnapshotCodec<>() {
+
+        @Override
+        public void write(Integer previous, Integer data, DataOutput out) throws IOException {
+            LONG.write(previous == null ? null : previous.longValue(), data.longValue(), out);
+        }
+
+        @Override
+        public Integer read(Integer previous, DataInput in) throws IOException {
+            return LONG.read(previous == null ? null : previous.longValue(), in).intValue();
+        }
+    };
+
+    /**
+     * Writes the number of chars shared with the previous string followed by the rest of the string in UTF-8.
+     * Sorted strings often share long prefixes, like URLs and paths do.
+     */
+    SnapshotCodec<String> STRING = new SnapshotCodec<>() {
+
+        @Override
+        public void write(String previous, String data, DataOutput out) throws IOException {
+            int shared = 0;
+            if (previous != null) {
+                int max = Math.min(previous.length(), data.length());
+                while (shared < max && previous.charAt(shared) == data.charAt(shared))
+                    shared++;
+
+                // never split a surrogate pair between the shared prefix and the rest
+                if (shared > 0 && Character.isHighSurrogate(data.charAt(shared - 1)))
+                    shared--;
+            }
+            byte[] rest = data.substring(shared).getBytes(StandardCharsets.UTF_8);
+
+            writeVarLong(shared, out);
+            writeVarLong(rest.length, out);
+            out.write(rest);
+        }
+
+        @Override
+        public String read(String previous, DataInput in) throws IOException {
+            int shared = (int) readVarLong(in);
+            byte[] rest = new byte[(int) readVarLong(in)];
+            in.readFully(rest);
+
+            String suffix = new String(rest, StandardCharsets.UTF_8);
+            return shared == 0 ? suffix : previous.substring(0, shared) + suffix;
+        }
+    };
+
+
+    /**
+     * Writes a long as an unsigned varint, seven bits per byte with the highest bit set on every byte but
+     * the last
+     */
+
+    static void writeVarLong(long value, DataOutput out) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Reads and writes snapshots of a Red-Black Binary Tree.
+ * <p>
+ * A snapshot starts with a header holding a magic number, a version and the number of elements. The elements
+ * follow in ascending order split into blocks, each one holding the number of elements in the block, the
+ * length of the encoded elements, the encoded elements and a CRC32C checksum of them. A block without
+ * elements ends the snapshot. Since every block is encoded on its own a damaged block is detected by its
+ * checksum before any of its elements are used. The block header is not covered by the checksum, so a
+ * length above the longest block a writer can produce is rejected before the block is read.
+ *
+ * @author August Johnson Palm
+ */
+
+
+final class SnapshotFormat {
+
+
+    private static final int MAGIC = 0x4D545331; // "MTS1"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int CHECKSUM_SIZE = 4;
+
+    static final int BLOCK_SIZE = 64 * 1024; // a block is ended when its encoded elements reach this many bytes
+    static final int MAX_ELEMENT_SIZE = 16 * 1024 * 1024; // the most bytes one encoded element may take
+    private static final int MAX_BLOCK_LENGTH = BLOCK_SIZE + MAX_ELEMENT_SIZE; // under BLOCK_SIZE before its last one
+
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * Writes the elements of the tree to the channel by walking the tree in order
+     *
+     * @param tree    the tree to be written
+     * @param codec   the codec encoding the elements
+     * @param channel the channel to write to
+     * @throws IOException if the channel could not be written or an element takes more than MAX_ELEMENT_SIZE
+     *                     bytes encoded
+     */
+
+    static <T extends Comparable<? super T>> void write(RedBlackBinaryTree<T> tree, SnapshotCodec<T> codec,
+                                                          WritableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(tree.size()).flip();
+        writeFully(header, channel);
+
+        BlockWriter block = new BlockWriter();
+        T previous = null;
+        int count = 0;
+
+        for (T data : tree) {
+            int before = block.size();
+            codec.write(previous, data, block.out);
+            if (block.size() - before > MAX_ELEMENT_SIZE)
+                throw new IOException("Element takes more than " + MAX_ELEMENT_SIZE + " bytes encoded");
+            previous = data;
+            count++;
+
+            if (block.size() >= BLOCK_SIZE) {
+                block.writeTo(count, channel);
+                previous = null;
+                count = 0;
+            }
+        }
+        if (count > 0)
+            block.writeTo(count, channel);
+
+        block.writeTo(0, channel); // the empty block ending the snapshot
+    }
+
+    /**
+     * Replaces the content of the tree with the elements of a snapshot. The elements are decoded one block at
+     * a time while the tree is built, so the whole snapshot is never held in memory.
+     * If the snapshot is damaged the tree is left empty.
+     *
+     * @param tree    the tree to be loaded
+     * @param codec   the codec decoding the elements
+     * @param channel the channel to read from
+     * @throws IOException if the channel could not be read or the snapshot is damaged
+     */
+
+    static <T extends Comparable<? super T>> void read(RedBlackBinaryTree<T> tree, SnapshotCodec<T> codec,
+                                                         ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, channel);
+
+        if (header.getInt() != MAGIC)
+            throw new IOException("Not a snapshot");
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version: " + version);
+        int size = header.getInt();
+        if (size < 0)
+            throw new IOException("Damaged snapshot header");
+
+        BlockReader<T> reader = new BlockReader<>(codec, channel);
+        try {
+            tree.buildFromSorted(reader, size);
+
+            if (reader.hasNext() || !reader.atEnd())
+                throw new IOException("Snapshot holds more elements than its header says");
+        } catch (UncheckedIOException e) {
+            tree.clear();
+            throw e.getCause();
+        } catch (NoSuchElementException e) {
+            tree.clear();
+            throw new IOException("Snapshot holds fewer elements than its header says", e);
+        } catch (IOException e) {
+            tree.clear();
+            throw e;
+        } catch (RuntimeException e) {
+            // a codec decoding a damaged element may throw anything, the tree is left empty all the same
+            tree.clear();
+            throw new IOException("Damaged snapshot", e);
+        }
+    }
+
+
+    /**
+     * Collects the encoded elements of a block before they are written with their checksum
+     */
+    private static class BlockWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4);
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        private final CRC32C checksum = new CRC32C();
+
+        int size() {
+            return bytes.size();
+        }
+
+        void writeTo(int count, WritableByteChannel channel) throws IOException {
+            byte[] payload = bytes.toByteArray();
+            checksum.reset();
+            checksum.update(payload);
+
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + payload.length + CHECKSUM_SIZE);
+            buffer.putInt(count).putInt(payload.length).put(payload).putInt((int) checksum.getValue()).flip();
+            writeFully(buffer, channel);
+
+            bytes.reset();
+        }
+    }
+
+    /**
+     * Reads the blocks of a snapshot lazily, handing out one element at a time. Checks that the elements are
+     * in strictly ascending order since the tree is built without comparing them.
+     */
+    private static class BlockReader<T extends Comparable<? super T>> implements Iterator<T> {
+
+        private final SnapshotCodec<T> codec;
+        private final ReadableByteChannel channel;
+
+        private final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        private final CRC32C checksum = new CRC32C();
+
+        private DataInputStream in;
+        private int remainingInBlock;
+        private boolean end;
+
+        private T previousInBlock;
+        private T last;
+
+        BlockReader(SnapshotCodec<T> codec, ReadableByteChannel channel) {
+            this.codec = codec;
+            this.channel = channel;
+        }
+
+        boolean atEnd() {
+            return end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (remainingInBlock == 0 && !end)
+                    nextBlock();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return remainingInBlock > 0;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            try {
+                T data = codec.read(previousInBlock, in);
+                if (last != null && data.compareTo(last) <= 0)
+                    throw new IOException("Snapshot elements are not in ascending order");
+
+                previousInBlock = last = data;
+                remainingInBlock--;
+                return data;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void nextBlock() throws IOException {
+            blockHeader.clear();
+            readFully(blockHeader, channel);
+
+            int count = blockHeader.getInt();
+            int length = blockHeader.getInt();
+            if (count < 0 || length < 0 || length > MAX_BLOCK_LENGTH)
+                throw new IOException("Damaged snapshot block header");
+
+            ByteBuffer block = ByteBuffer.allocate(length + CHECKSUM_SIZE);
+            readFully(block, channel);
+
+            checksum.reset();
+            checksum.update(block.array(), 0, length);
+            if ((int) checksum.getValue() != block.getInt(length))
+                throw new IOException("Snapshot block checksum mismatch");
+
+            in = new DataInputStream(new ByteArrayInputStream(block.array(), 0, length));
+            remainingInBlock = count;
+            previousInBlock = null;
+            end = count == 0;
+        }
+    }
+
+    static void writeFully(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    static void readFully(ByteBuffer buffer, ReadableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Snapshot ended unexpectedly");
+        }
+        buffer.flip();
+    }
+}